@@ -3,9 +3,7 @@ package bistro.core;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
-import bistro.core.data.ColumnDataImpl;
 import bistro.core.operations.*;
 
 public class Column implements Element {
@@ -26,6 +24,7 @@ public class Column implements Element {
     }
     public void setName(String name) {
         this.name = name;
+        this.schema.indexColumnNames(this.input);
     }
 
     private Table input;
@@ -33,14 +32,28 @@ public class Column implements Element {
         return this.input;
     }
     public void setInput(Table table) {
+        Table from = this.input;
         this.input = table;
+        this.schema.moveColumn(this, from);
     }
 
     private Table output;
     public Table getOutput() {
         return this.output;
     }
-    public void setOutput(Table table) { this.output = table; this.getData().setValue(null); }
+    public void setOutput(Table table) {
+        this.output = table;
+        this.schema.definitionChanged(this);
+
+        // New output type might need another storage (but existing outputs are not valid anyway)
+        Object defaultValue = this.data.getDefaultValue();
+        if(this.data instanceof PersistentData) {
+            ((PersistentData)this.data).delete(); // Its file is not reopened with stored outputs
+        }
+        this.data = this.storageFactory.createColumnData(this, this.input.getData().getIdRange().start, this.input.getData().getIdRange().end);
+        this.data.setDefaultValue(defaultValue);
+        this.data.setChanged();
+    }
 
     //
     // Data
@@ -50,6 +63,9 @@ public class Column implements Element {
     public ColumnData getData() { return this.data; }
     public void setData(ColumnData data) { this.data = data; }
 
+    private StorageFactory storageFactory; // Used to create data for this column
+    public StorageFactory getStorageFactory() { return this.storageFactory; }
+
     //
     // Element interface
     //
@@ -82,25 +98,12 @@ public class Column implements Element {
     }
     @Override
     public boolean hasDependency(Element element) {
-        for(Element dep : this.getDependencies()) {
-            if(dep == element) return true;
-            if(dep.hasDependency(element)) return true; // Recursion
-        }
-        return false;
+        return Topology.hasDependency(this, element); // Each dependency is visited once
     }
 
     @Override
     public List<Element> getDependents() {
-        List<Element> cols = schema.getColumns().stream().filter(x -> x.getDependencies().contains(this)).collect(Collectors.<Element>toList());
-        List<Element> tabs = schema.getTables().stream().filter(x -> x.getDependencies().contains(this)).collect(Collectors.<Element>toList());
-
-        List<Element> ret = new ArrayList<>();
-        ret.addAll(cols);
-        for(Element d : tabs) {
-            if(!ret.contains(d)) ret.add(d);
-        }
-
-        return ret;
+        return new ArrayList<>(this.schema.getTopology().getDependents(this));
     }
     @Override
     public boolean hasDependents(Element element) {
@@ -111,6 +114,15 @@ public class Column implements Element {
         return false;
     }
 
+    private boolean subscribed; // Outputs are requested by the user and hence this column and its dependencies are evaluated
+    public boolean isSubscribed() {
+        return this.subscribed;
+    }
+    public void setSubscribed(boolean subscribed) {
+        this.subscribed = subscribed;
+        this.schema.setSubscribed(this, subscribed);
+    }
+
     private List<BistroException> errors = new ArrayList<>();
     @Override
     public List<BistroException> getErrors() { // Empty list in the case of no errors
@@ -119,37 +131,18 @@ public class Column implements Element {
 
     @Override
     public boolean hasErrorsDeep() {
-        if(errors.size() > 0) return true; // Check this element
-
-        // Otherwise check errors in dependencies (recursively)
-        for(Element dep : this.getDependencies()) {
-            if(dep.hasErrorsDeep()) return true;
-        }
-
-        return false;
+        return this.schema.getTopology().hasErrorsDeep(this); // State of dependencies is memoized until the next evaluation
     }
 
     @Override
     public boolean isDirty() {
+        return this.schema.getTopology().isDirty(this); // State of dependencies is memoized until the next evaluation
+    }
 
-        // Definition has changed
+    boolean isDirtyOwn() { // Whether this column has to be evaluated independent of the state of its dependencies
         if(this.operation != null) {
             if(this.getDefinitionChangedAt() > this.getData().getChangedAt()) return true; // Definition has changes
         }
-
-        // One of its dependencies has changes or is dirty
-        for(Element dep : this.getDependencies()) {
-
-            if(dep instanceof Column) {
-                if(((Column)dep).getData().isChanged()) return true;
-            }
-            else if(dep instanceof Table) {
-                if(((Table)dep).getData().isChanged()) return true;
-            }
-
-            if(dep.isDirty()) return true; // Recursion
-        }
-
         return false;
     }
 
@@ -167,6 +160,8 @@ public class Column implements Element {
 
         this.errors.clear();
 
+        this.schema.getTopology().resetState(); // This evaluation is a new pass which has to see the latest data and errors of all dependencies
+
         if(this.hasErrorsDeep()) {
             // TODO: Add error: cannot evaluate because of execution error in a dependency
             return;
@@ -185,11 +180,20 @@ public class Column implements Element {
             return;
         }
 
-        //
-        // Really evaluate
-        //
+        this.evaluateOperation();
+
+        this.schema.getTopology().resetState(); // This element is not dirty anymore but its dependents might be
+    }
+
+    void evaluateOperation() { // Really evaluate without checking the state of dependencies (the caller knows that it is dirty and can be evaluated)
+
+        if(!this.isDerived() || this.operation == null) {
+            return;
+        }
+
         try {
             this.operation.evaluate();
+            this.setEvaluated(true);
         }
         catch(BistroException e) {
             this.errors.add(e);
@@ -200,6 +204,13 @@ public class Column implements Element {
 
     }
 
+    // Persistent outputs store whether they are evaluated for the current definition so that they are retained after reopening
+    private void setEvaluated(boolean evaluated) {
+        if(this.data instanceof PersistentData) {
+            ((PersistentData)this.data).setEvaluated(evaluated);
+        }
+    }
+
     //
     // Column (operation) kind
     //
@@ -212,9 +223,16 @@ public class Column implements Element {
     @Override
     public void setOperation(Operation operation) {
         this.errors.clear();
-        this.definitionChangedAt = System.nanoTime();
+
+        // Outputs reopened from persistent data were evaluated for this definition (it is set again after reopening)
+        boolean restored = this.data instanceof PersistentData && ((PersistentData)this.data).isRestored();
+        if(!restored) {
+            this.definitionChangedAt = System.nanoTime();
+        }
+        this.setEvaluated(restored);
 
         this.operation = operation;
+        this.schema.definitionChanged(this); // Dependencies are updated in the topology
 
         if(this.hasDependency(this)) {
             this.operation = null; // Reset definition because of failure to set new operation
@@ -240,6 +258,12 @@ public class Column implements Element {
         return this.definitionChangedAt;
     }
 
+    void setOutdated() { // Changes of dependencies have been reset without evaluating this column so its outputs have to be evaluated anew (as if its definition has changed)
+        if(!this.isDerived()) return;
+        this.definitionChangedAt = System.nanoTime();
+        this.setEvaluated(false);
+    }
+
     //
     // Attributes
     //
@@ -267,6 +291,26 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    public void calculate(EvalCalculate lambda, boolean threadSafe, ColumnPath... paths) { // Thread-safe lambda allows for evaluating large ranges in parallel
+        Operation op = new OpCalculate(this, lambda, threadSafe, paths);
+        this.setOperation(op);
+    }
+
+    public void calculate(EvalCalculate lambda, boolean threadSafe, Column... columns) {
+        Operation op = new OpCalculate(this, lambda, threadSafe, columns);
+        this.setOperation(op);
+    }
+
+    public void calculate(EvalCalculateVector lambda, ColumnPath... paths) { // Lambda processes batches of numeric values
+        Operation op = new OpCalculate(this, lambda, paths);
+        this.setOperation(op);
+    }
+
+    public void calculate(EvalCalculateVector lambda, Column... columns) {
+        Operation op = new OpCalculate(this, lambda, columns);
+        this.setOperation(op);
+    }
+
     //
     // Link column
     //
@@ -328,6 +372,16 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    public void accumulate(ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, EvalCombine combiner, ColumnPath... paths) { // Combiner allows for accumulating facts in parallel
+        Operation op = new OpAccumulate(this, groupPath, adder, remover, combiner, paths);
+        this.setOperation(op);
+    }
+
+    public void accumulate(Column groupColumn, EvalAccumulate adder, EvalAccumulate remover, EvalCombine combiner, Column... columns) {
+        Operation op = new OpAccumulate(this, groupColumn, adder, remover, combiner, columns);
+        this.setOperation(op);
+    }
+
     //
     // Rolling column
     //
@@ -352,6 +406,26 @@ public class Column implements Element {
         this.setOperation(op);
     }
 
+    public void roll(int sizePast, int sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, ColumnPath... paths) { // Windows are updated incrementally
+        Operation op = new OpRoll(this, (ColumnPath)null, sizePast, sizeFuture, adder, subtractor, paths);
+        this.setOperation(op);
+    }
+
+    public void roll(int sizePast, int sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, Column... columns) {
+        Operation op = new OpRoll(this, (Column)null, sizePast, sizeFuture, adder, subtractor, columns);
+        this.setOperation(op);
+    }
+
+    public void roll(ColumnPath distancePath, int sizePast, int sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, ColumnPath... paths) {
+        Operation op = new OpRoll(this, distancePath, sizePast, sizeFuture, adder, subtractor, paths);
+        this.setOperation(op);
+    }
+
+    public void roll(Column distanceColumn, int sizePast, int sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, Column... columns) {
+        Operation op = new OpRoll(this, distanceColumn, sizePast, sizeFuture, adder, subtractor, columns);
+        this.setOperation(op);
+    }
+
     //
     // Serialization and construction
     //
@@ -361,19 +435,11 @@ public class Column implements Element {
         return "[" + getName() + "]: " + input.getName() + " -> " + this.getOperationType() + " -> " + output.getName();
     }
 
-    @Override
-    public boolean equals(Object aThat) {
-        if (this == aThat) return true;
-        if ( !(aThat instanceof Column) ) return false;
-
-        Column that = (Column)aThat;
-
-        if(!that.getId().toString().equals(id.toString())) return false;
-
-        return true;
+    public Column(Schema schema, String name, Table input, Table output) {
+        this(schema, name, input, output, input.getStorageFactory());
     }
 
-    public Column(Schema schema, String name, Table input, Table output) {
+    public Column(Schema schema, String name, Table input, Table output, StorageFactory storageFactory) {
         this.schema = schema;
         this.id = UUID.randomUUID();
         this.name = name;
@@ -381,6 +447,7 @@ public class Column implements Element {
         this.output = output;
 
         // Where its output values are stored
-        this.data = new ColumnDataImpl(this.input.getData().getIdRange().start, this.input.getData().getIdRange().end);
+        this.storageFactory = storageFactory;
+        this.data = storageFactory.createColumnData(this, this.input.getData().getIdRange().start, this.input.getData().getIdRange().end);
     }
 }
@@ -1,5 +1,7 @@
 package bistro.core;
 
+import java.util.List;
+
 public interface ColumnData {
 
     //
@@ -8,6 +10,7 @@ public interface ColumnData {
 
     public Object getValue(long id);
     public void setValue(long id, Object value); // One id
+    public void setValues(long start, int length, Object[] values); // Batch of ids without registering changes (batches of different ids can be written concurrently)
 
     public void setValue(Range range, Object value); // Range of ids
     public void setValue(Range range); // Default value
@@ -21,6 +24,8 @@ public interface ColumnData {
     // Input range
     //
 
+    public Range getIdRange(); // Ids for which outputs are currently stored (it can include ids already removed from the table)
+
     public void add();
     public void add(long count); // Remove the oldest records with lowest ids
     public void remove();
@@ -38,10 +43,14 @@ public interface ColumnData {
 
     // Having changed flag means that there have been SOME changes in this element
     // In the case of no additional information about the scope of changes (delta), we assume that changes can be anywhere in this element and normally this leads to full re-evaluation of dependents
-    // Columns do not set this flag in data methods (by assuming that changes are only in newly added records). If necessary, the flag has to be set manually.
+    // Columns register the scope of changes (changed range of ids) in generic setters of individual ids and ranges so that dependents re-evaluate only these ids.
+    // Changes of all outputs (e.g., new default values) set the flag without scope. If necessary, the flag or the scope has to be set manually.
+    // Registration of changes is not thread-safe. Concurrent writers of different ids have to set outputs in batches (setValues) and register them when all writers are done.
     // Tables set this flag in data methods as well as register the scope of changes automatically.
     public boolean isChanged();
-    public void setChanged();
+    public void setChanged(); // All outputs might have changed
+    public void setChanged(Range range); // Outputs of these ids have changed
+    public List<Range> getChangedRanges(); // Ordered disjoint ranges of ids with changed outputs (all ids if the scope is not known)
     public void resetChanged(); // Forget the changes. Normally after evaluation of all dependents.
 
     public long getChangedAt();
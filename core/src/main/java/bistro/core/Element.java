@@ -24,6 +24,7 @@ public interface Element {
      * Whether dependencies (not this element) have changed their data state (since last evaluation) and hence this element has to be evaluated.
      * This includes also changes of definitions including the definition of this element as well as anything that can influence the data state of this element.
      * This does not include the data state of this element itself.
+     * The state is memoized by the schema topology and is computed anew by the next evaluation or after definitions change.
      */
     boolean isDirty();
 
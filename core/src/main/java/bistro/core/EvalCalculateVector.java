@@ -0,0 +1,11 @@
+package bistro.core;
+
+/**
+ * This method knows how to compute output values of a batch of inputs given the values of each parameter as a primitive array.
+ * Only the first length elements of the arrays are valid. Outputs of inputs with null parameters are ignored (they are null).
+ * It is used only by calculate columns. Other row-by-row operations (product, accumulate, roll) still evaluate their lambdas for each input separately.
+ */
+@FunctionalInterface
+public interface EvalCalculateVector {
+    public void evaluate(double[][] params, double[] outputs, int length) throws BistroException;
+}
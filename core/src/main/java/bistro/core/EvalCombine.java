@@ -0,0 +1,9 @@
+package bistro.core;
+
+/**
+ * This method knows how to merge two aggregates computed for different subsets of facts of the same group.
+ */
+@FunctionalInterface
+public interface EvalCombine {
+    public Object evaluate(Object aggregate1, Object aggregate2) throws BistroException;
+}
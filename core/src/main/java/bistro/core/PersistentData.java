@@ -0,0 +1,22 @@
+package bistro.core;
+
+/**
+ * Data of a column or table which is stored in files so that it can be reopened by a new schema (e.g., after restart).
+ * Reopened outputs are retained if they were evaluated for the definition of their element and the same definition is set again after reopening.
+ * Then the next evaluation processes only the changes which were not evaluated before closing (e.g., added and removed records).
+ */
+public interface PersistentData {
+
+    // Whether the data has been reopened with evaluated outputs and no definition has been set since then
+    // The first definition set after reopening is supposed to be the one the outputs were evaluated for
+    public boolean isRestored();
+
+    // Whether the outputs are evaluated for the current definition (it is stored so that it is known after reopening)
+    public void setEvaluated(boolean evaluated);
+
+    // Write all changes and release the files. The data cannot be used afterwards.
+    public void close();
+
+    // Close and delete the files (e.g., if the stored outputs are not valid anymore)
+    public void delete();
+}
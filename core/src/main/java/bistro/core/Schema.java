@@ -1,10 +1,24 @@
 package bistro.core;
 
+import bistro.core.data.StorageFactoryImpl;
 import bistro.core.operations.OpCalculate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Schema {
@@ -22,6 +36,18 @@ public class Schema {
         this.name = name;
     }
 
+    //
+    // Storage
+    //
+
+    private StorageFactory storageFactory = new StorageFactoryImpl(); // Used by default to create data for new tables and columns
+    public StorageFactory getStorageFactory() {
+        return this.storageFactory;
+    }
+    public void setStorageFactory(StorageFactory storageFactory) {
+        this.storageFactory = storageFactory;
+    }
+
     //
     // Tables
     //
@@ -31,33 +57,46 @@ public class Schema {
         return this.tables;
     }
     public Table getTable(String table) {
-        Table ret = this.tables.stream().filter(x -> x.getName().equals(table)).findAny().orElse(null);
-        return ret;
+        return this.tablesByName.get(table);
     }
     public Table getTableById(String id) {
-        Table ret = this.tables.stream().filter(x -> x.getId().toString().equals(id)).findAny().orElse(null);
-        return ret;
+        return this.tablesById.get(id);
     }
 
     public Table createTable(String name) {
+        return this.createTable(name, this.storageFactory);
+    }
+    public Table createTable(String name, StorageFactory storageFactory) {
         Table tab = this.getTable(name);
         if(tab != null) return tab; // Already exists
 
-        tab = new Table(this, name);
+        tab = new Table(this, name, storageFactory);
         this.tables.add(tab);
+        this.tablesByName.putIfAbsent(name, tab);
+        this.tablesById.put(tab.getId().toString(), tab);
+        this.columnsByTable.put(tab, new ArrayList<>());
+        this.columnsByName.put(tab, new HashMap<>());
+        this.definitionChanged(tab);
         return tab;
     }
     public void deleteTable(Table tab) {
         // Remove input columns
-        List<Column> inColumns = this.columns.stream().filter(x -> x.getInput().equals(tab)).collect(Collectors.<Column>toList());
-        this.columns.removeAll(inColumns);
+        List<Column> inColumns = new ArrayList<>(this.getColumns(tab));
+        inColumns.forEach(x -> this.deleteColumn(x));
 
         // Remove output columns
-        List<Column> outColumns = this.columns.stream().filter(x -> x.getOutput().equals(tab)).collect(Collectors.<Column>toList());
-        this.columns.removeAll(outColumns);
+        List<Column> outColumns = this.columns.stream().filter(x -> x.getOutput() == tab).collect(Collectors.<Column>toList());
+        outColumns.forEach(x -> this.deleteColumn(x));
 
         // Remove table itself
         this.tables.remove(tab);
+        close(tab.getData());
+        this.subscribed.remove(tab);
+        this.tablesById.remove(tab.getId().toString());
+        this.columnsByTable.remove(tab);
+        this.columnsByName.remove(tab);
+        this.indexTableNames();
+        this.definitionChanged(tab);
     }
 
     //
@@ -69,35 +108,37 @@ public class Schema {
         return this.columns;
     }
     public List<Column> getColumns(Table table) {
-        List<Column> res = this.columns.stream().filter(x -> x.getInput().equals(table)).collect(Collectors.<Column>toList());
-        return res;
+        List<Column> res = this.columnsByTable.get(table);
+        if(res == null) return new ArrayList<>();
+        return Collections.unmodifiableList(res);
     }
     public List<Column> getColumns(String table) {
-        List<Column> res = this.columns.stream().filter(x -> x.getInput().getName().equals(table)).collect(Collectors.<Column>toList());
-        return res;
+        return this.getColumns(this.getTable(table));
     }
     public Column getColumn(Table table, String column) {
-        Column ret = this.columns.stream().filter(x -> x.getInput().equals(table) && x.getName().equals(column)).findAny().orElse(null);
-        return ret;
+        Map<String, Column> names = this.columnsByName.get(table);
+        if(names == null) return null;
+        return names.get(column);
     }
     public Column getColumn(String table, String column) {
-        Column ret = this.columns.stream().filter(x -> x.getInput().getName().equals(table) && x.getName().equals(column)).findAny().orElse(null);
-        return ret;
+        return this.getColumn(this.getTable(table), column);
     }
     public Column getColumnById(String id) {
-        Column ret = this.columns.stream().filter(x -> x.getId().toString().equals(id)).findAny().orElse(null);
-        return ret;
+        return this.columnsById.get(id);
     }
 
     public Column createColumn(String name, Table  input) {
         return this.createColumn(name, input, null);
     }
     public Column createColumn(String name, Table  input, Table output) {
+        return this.createColumn(name, input, output, input.getStorageFactory()); // Columns are stored like their input table by default
+    }
+    public Column createColumn(String name, Table  input, Table output, StorageFactory storageFactory) {
         if(output == null) {
             output = this.getTable("Object");
         }
-        Column col = new Column(this, name, input, output);
-        this.columns.add(col);
+        Column col = new Column(this, name, input, output, storageFactory);
+        this.addColumn(col);
         return col;
     }
     public Column createColumn(String name, String input) {
@@ -108,12 +149,89 @@ public class Schema {
             output = "Object";
         }
         Column col = new Column(this, name, this.getTable(input), this.getTable(output));
-        this.columns.add(col);
+        this.addColumn(col);
         return col;
     }
 
     public void deleteColumn(Column col) {
-        this.columns.remove(col);
+        if(!this.columns.remove(col)) return;
+        close(col.getData());
+        this.subscribed.remove(col);
+        this.columnsById.remove(col.getId().toString());
+        List<Column> tableColumns = this.columnsByTable.get(col.getInput());
+        if(tableColumns != null) {
+            tableColumns.remove(col);
+            this.indexColumnNames(col.getInput());
+        }
+        this.definitionChanged(col);
+    }
+
+    // Write persistent data of all tables and columns and release their files. The schema cannot be used afterwards.
+    public void close() {
+        this.columns.forEach(x -> close(x.getData()));
+        this.tables.forEach(x -> close(x.getData()));
+    }
+
+    private static void close(Object data) {
+        if(data instanceof PersistentData) {
+            ((PersistentData)data).close();
+        }
+    }
+
+    private void addColumn(Column col) {
+        this.columns.add(col);
+        this.columnsById.put(col.getId().toString(), col);
+        List<Column> tableColumns = this.columnsByTable.get(col.getInput());
+        if(tableColumns != null) {
+            tableColumns.add(col);
+            this.columnsByName.get(col.getInput()).putIfAbsent(col.getName(), col);
+        }
+        this.definitionChanged(col);
+    }
+
+    //
+    // Catalog
+    //
+
+    // Tables and columns are indexed by their names and ids, and columns are also grouped by their input table
+    // Indexes are updated when elements are created, deleted, renamed or moved so that lookups and data operations do not scan all elements of the schema
+    // If there are several elements with the same name then the first one is found
+    private Map<String, Table> tablesByName = new HashMap<>();
+    private Map<String, Table> tablesById = new HashMap<>();
+    private Map<String, Column> columnsById = new HashMap<>();
+    private Map<Table, List<Column>> columnsByTable = new HashMap<>(); // Tables and columns are compared by identity
+    private Map<Table, Map<String, Column>> columnsByName = new HashMap<>();
+
+    void indexTableNames() { // After a table has been deleted or renamed
+        this.tablesByName.clear();
+        for(Table tab : this.tables) {
+            this.tablesByName.putIfAbsent(tab.getName(), tab);
+        }
+    }
+
+    void indexColumnNames(Table table) { // After a column of this table has been deleted or renamed
+        Map<String, Column> names = this.columnsByName.get(table);
+        if(names == null) return;
+        names.clear();
+        for(Column col : this.columnsByTable.get(table)) {
+            names.putIfAbsent(col.getName(), col);
+        }
+    }
+
+    void moveColumn(Column col, Table from) { // After the input table of a column has been changed
+        if(!this.columns.contains(col)) return;
+        List<Column> fromColumns = this.columnsByTable.get(from);
+        if(fromColumns != null) {
+            fromColumns.remove(col);
+            this.indexColumnNames(from);
+        }
+        List<Column> toColumns = this.columnsByTable.get(col.getInput());
+        if(toColumns != null) {
+            toColumns.add(col);
+            this.indexColumnNames(col.getInput());
+        }
+        this.definitionChanged(col);
+        if(from != null) this.definitionChanged(from);
     }
 
     //
@@ -146,62 +264,279 @@ public class Schema {
         return this.topologyChangedAt;
     }
 
-    public void evaluate() {
+    private Set<Element> changedElements = new LinkedHashSet<>(); // Elements with new definitions which have not been processed by the topology yet
+
+    void definitionChanged(Element elem) { // New operation, new input or output, or added or deleted element
+        this.changedElements.add(elem);
+        if(elem instanceof Column && ((Column)elem).getInput() != null) {
+            this.changedElements.add(((Column)elem).getInput()); // Table dependencies might depend on its columns (e.g., product keys)
+        }
+    }
+
+    public Topology getTopology() { // Topology which is up-to-date with all definitions
         if(this.topology == null) {
             this.topology = new Topology(this);
             this.topology.create();
+            this.changedElements.clear();
             this.topologyChangedAt = System.nanoTime();
         }
+        else if(!this.changedElements.isEmpty()) { // Only changed elements and their dependents are processed
+            this.topology.update(new ArrayList<>(this.changedElements));
+            this.topology.resetState(); // New definitions make elements dirty
+            this.changedElements.clear();
+            this.topologyChangedAt = System.nanoTime();
+        }
+        return this.topology;
+    }
 
-        // Find newest operation time
-        long newestColumnTime = this.columns.stream().mapToLong(x -> x.getDefinitionChangedAt()).max().getAsLong();
-        long newestTableTime = this.tables.stream().mapToLong(x -> x.getDefinitionChangedAt()).max().getAsLong();
-        long definitionChangedAt = Math.max(newestColumnTime, newestTableTime);
+    //
+    // Subscribed elements
+    //
 
-        // If topology is not up-to-date then update it
-        if(this.topologyChangedAt <= definitionChangedAt) {
-            this.topology = new Topology(this);
-            topology.create();
-            this.topologyChangedAt = System.nanoTime();
+    // If some elements are subscribed then only they and their (direct or indirect) dependencies are evaluated
+    // Other elements are intermediate or exploratory elements which are not needed
+    private Set<Element> subscribed = new LinkedHashSet<>();
+    public List<Element> getSubscribed() {
+        return new ArrayList<>(this.subscribed);
+    }
+
+    void setSubscribed(Element elem, boolean subscribed) {
+        if(subscribed) this.subscribed.add(elem);
+        else this.subscribed.remove(elem);
+    }
+
+    public void evaluate() {
+        if(!this.subscribed.isEmpty()) { // Evaluation plan is cached by the topology
+            this.evaluateUpstream(this.getSubscribed());
+            return;
         }
 
-        for(List<Element> layer : this.topology.layers) {
+        this.evaluateLayers(this.getTopology().layers);
 
+        // After evaluating, clear the changes in all elements of the graph
+        for(List<Element> layer : this.topology.layers) {
             for(Element elem : layer) {
-                //
-                // Check possibility to evaluate
-                //
-                elem.getErrors().clear();
-                if(elem.hasErrorsDeep()) { // Columns with evaluation errors (might appear during previous pass) cannot be evaluated and remain dirty
-                    continue;
+                this.resetChanged(elem);
+            }
+        }
+    }
+
+    // Evaluate only these columns and their (direct or indirect) dependencies
+    public void evaluate(Column... targets) {
+        this.evaluateUpstream(Arrays.asList(targets));
+    }
+
+    protected void evaluateUpstream(List<Element> targets) {
+        List<List<Element>> layers = this.getTopology().getUpstreamLayers(targets);
+        this.evaluateLayers(layers);
+
+        // After evaluating, clear the changes in the evaluated elements
+        // Other dependents of changed elements cannot process these changes later and therefore they will be evaluated anew
+        Set<Element> evaluated = new HashSet<>();
+        layers.forEach(x -> evaluated.addAll(x));
+        for(Element elem : evaluated) {
+            if(!this.isChanged(elem)) continue;
+            for(Element dep : this.topology.getDependents(elem)) {
+                if(evaluated.contains(dep)) continue;
+                if(dep instanceof Column) {
+                    ((Column)dep).setOutdated();
                 }
+                else if(dep instanceof Table) {
+                    ((Table)dep).setOutdated();
+                }
+            }
+        }
+        for(Element elem : evaluated) {
+            this.resetChanged(elem);
+        }
+    }
+
+    protected void evaluateLayers(List<List<Element>> layers) {
 
-                //
-                // Check need to evaluate
-                //
-                if(!elem.isDirty()) {
-                    continue;
+        this.topology.resetState(); // Dirty and error state is computed once for each element during this pass
+
+        if(this.executor == null) { // Sequentially layer by layer
+            for(List<Element> layer : layers) {
+                for(Element elem : layer) {
+                    this.evaluateElement(elem);
                 }
+            }
+        }
+        else { // Concurrently as soon as dependencies are evaluated
+            this.evaluateConcurrently(layers);
+        }
+    }
+
+    private boolean isChanged(Element elem) {
+        if(elem instanceof Column) {
+            return ((Column)elem).getData().isChanged();
+        }
+        else if(elem instanceof Table) {
+            return ((Table)elem).getData().isChanged();
+        }
+        return false;
+    }
+
+    private void resetChanged(Element elem) {
+        if(elem instanceof Column) {
+            ((Column)elem).getData().resetChanged();
+        }
+        else if(elem instanceof Table) {
+            ((Table)elem).getData().resetChanged();
+        }
+    }
+
+    protected void evaluateElement(Element elem) {
+        //
+        // Check possibility to evaluate
+        //
+        elem.getErrors().clear();
+        if(this.topology.hasErrorsDeep(elem)) { // Columns with evaluation errors (might appear during previous pass) cannot be evaluated and remain dirty
+            return;
+        }
+
+        //
+        // Check need to evaluate
+        //
+        if(!this.topology.isDirty(elem)) {
+            return;
+        }
+
+        //
+        // Really evaluate
+        //
+        if(elem instanceof Column) {
+            ((Column)elem).evaluateOperation();
+        }
+        else if(elem instanceof Table) {
+            ((Table)elem).evaluateOperation();
+        }
+
+        if(!elem.getErrors().isEmpty()) { // Dependents cannot be evaluated
+            this.topology.setErrors(elem);
+        }
+    }
 
-                //
-                // Really evaluate
-                //
-                elem.evaluate();
+    //
+    // Concurrent evaluation
+    //
+
+    private Executor executor; // If specified, then independent elements are evaluated concurrently by submitting them to this executor (e.g., ForkJoinPool)
+    public Executor getExecutor() {
+        return this.executor;
+    }
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    protected void evaluateConcurrently(List<List<Element>> layers) {
+
+        List<Element> elements = new ArrayList<>();
+        layers.forEach(x -> elements.addAll(x));
+
+        // Each element waits for its dependencies and notifies its dependents
+        Map<Element, Set<Element>> dependents = new HashMap<>();
+        Map<Element, AtomicInteger> waiting = new HashMap<>();
+        for(Element elem : elements) {
+            dependents.put(elem, new LinkedHashSet<>());
+            waiting.put(elem, new AtomicInteger());
+        }
+        BiConsumer<Element, Element> wait = (dep, elem) -> {
+            if(dep != elem && dependents.get(dep).add(elem)) waiting.get(elem).incrementAndGet();
+        };
+
+        for(Element elem : elements) {
+            for(Element next : this.topology.getDependents(elem)) {
+                if(dependents.containsKey(next)) wait.accept(elem, next);
             }
         }
 
-        // After evaluating, clear the changes in all elements of the graph
-        for(List<Element> layer : this.topology.layers) {
-            for(Element elem : layer) {
+        // Elements which access the same table where at least one of them changes it (populates or indexes a table) must not be evaluated concurrently
+        // Elements are in topological order so each element waits for the last element which changed the table and
+        // an element which changes the table also waits for all elements which accessed it after that
+        Map<Table, Element> writers = new HashMap<>();
+        Map<Table, List<Element>> readers = new HashMap<>();
+        for(Element elem : elements) {
+            List<Table> changedTables = this.getChangedTables(elem);
+            for(Table table : this.getAccessedTables(elem)) {
+                Element writer = writers.get(table);
+                if(writer != null) wait.accept(writer, elem);
+
+                List<Element> tableReaders = readers.computeIfAbsent(table, x -> new ArrayList<>());
+                if(changedTables.contains(table)) {
+                    tableReaders.forEach(x -> wait.accept(x, elem));
+                    tableReaders.clear();
+                    writers.put(table, elem);
+                }
+                else {
+                    tableReaders.add(elem);
+                }
+            }
+        }
 
-                if(elem instanceof Column) {
-                    ((Column)elem).getData().resetChanged();
+        CountDownLatch done = new CountDownLatch(elements.size());
+
+        Consumer<Element> submit = new Consumer<Element>() {
+            @Override
+            public void accept(Element elem) {
+                Runnable task = () -> {
+                    try {
+                        Schema.this.evaluateElement(elem);
+                    }
+                    catch(Exception e) {
+                        elem.getErrors().add( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error evaluating element.") );
+                        Schema.this.topology.setErrors(elem);
+                    }
+                    finally {
+                        for(Element next : dependents.get(elem)) {
+                            if(waiting.get(next).decrementAndGet() == 0) this.accept(next);
+                        }
+                        done.countDown();
+                    }
+                };
+                try {
+                    executor.execute(task);
                 }
-                else if(elem instanceof Table) {
-                    ((Table)elem).getData().resetChanged();
+                catch(RejectedExecutionException e) {
+                    task.run(); // Evaluate in this thread
                 }
             }
+        };
+
+        elements.stream().filter(x -> waiting.get(x).get() == 0).collect(Collectors.toList()).forEach(submit);
+
+        try {
+            done.await();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BistroException(BistroErrorCode.EVALUATION_ERROR, "Evaluation interrupted.", "Schema evaluation has been interrupted before all elements were evaluated.");
+        }
+    }
+
+    private List<Table> getChangedTables(Element e) {
+        List<Table> ret = new ArrayList<>();
+        if(e instanceof Table) {
+            ret.add((Table)e); // Populated
+        }
+        else if(e.getOperationType() == OperationType.LINK || e.getOperationType() == OperationType.PROJECT) {
+            ret.add(((Column)e).getOutput()); // Populated or indexed
         }
+        return ret;
+    }
+
+    private List<Table> getAccessedTables(Element e) {
+        List<Table> ret = new ArrayList<>();
+        if(e instanceof Table) {
+            ret.add((Table)e);
+        }
+        else {
+            ret.add(((Column)e).getInput());
+            if(e.getOperationType() == OperationType.LINK || e.getOperationType() == OperationType.PROJECT) {
+                ret.add(((Column)e).getOutput());
+            }
+        }
+        return ret;
     }
 
     //
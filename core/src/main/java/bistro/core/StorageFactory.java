@@ -0,0 +1,20 @@
+package bistro.core;
+
+/**
+ * Objects of this class know how to create data objects for columns and tables, that is, which implementation is used to store the data.
+ * A factory is registered in the schema and can be overridden for individual columns and tables when they are created.
+ * By default, columns are created by the factory of their input table.
+ * The choice can be based on the output type of the column, its expected size or access pattern.
+ */
+public interface StorageFactory {
+
+    /**
+     * Create an object for storing output values of the specified column for the specified range of input ids.
+     */
+    public ColumnData createColumnData(Column column, long start, long end);
+
+    /**
+     * Create an object for storing (managing) input ids of the specified table.
+     */
+    public TableData createTableData(Table table);
+}
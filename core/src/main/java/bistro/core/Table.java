@@ -1,6 +1,6 @@
 package bistro.core;
 
-import bistro.core.data.TableDataImpl;
+import bistro.core.operations.OpLink;
 import bistro.core.operations.OpProduct;
 import bistro.core.operations.OpRange;
 
@@ -23,9 +23,10 @@ public class Table implements Element {
     }
     public void setName(String name) {
         this.name = name;
+        this.schema.indexTableNames();
     }
 
-    private static List<String> primitiveNames = Arrays.asList("Object", "Double", "Integer", "String");
+    private static List<String> primitiveNames = Arrays.asList("Object", "Double", "Integer", "Long", "Boolean", "String");
     public boolean isPrimitive() {
         return this.primitiveNames.stream().anyMatch(x -> x.equalsIgnoreCase(this.name));
     }
@@ -49,6 +50,21 @@ public class Table implements Element {
         this.data = data;
     }
 
+    // Whether some dependent reads values of removed records during its next evaluation (maintained by the topology)
+    // Otherwise removed records are released immediately
+    private boolean removedRead;
+    public boolean isRemovedRead() {
+        return this.removedRead;
+    }
+    void setRemovedRead(boolean removedRead) {
+        this.removedRead = removedRead;
+    }
+
+    private StorageFactory storageFactory; // Used to create data for this table
+    public StorageFactory getStorageFactory() {
+        return this.storageFactory;
+    }
+
     //
     // Element interface
     //
@@ -79,11 +95,7 @@ public class Table implements Element {
     }
     @Override
     public boolean hasDependency(Element element) {
-        for(Element dep : this.getDependencies()) {
-            if(dep == element) return true;
-            if(dep.hasDependency(element)) return true; // Recursion
-        }
-        return false;
+        return Topology.hasDependency(this, element); // Each dependency is visited once
     }
 
     @Override
@@ -99,6 +111,15 @@ public class Table implements Element {
         return false;
     }
 
+    private boolean subscribed; // Outputs are requested by the user and hence this table and its dependencies are evaluated
+    public boolean isSubscribed() {
+        return this.subscribed;
+    }
+    public void setSubscribed(boolean subscribed) {
+        this.subscribed = subscribed;
+        this.schema.setSubscribed(this, subscribed);
+    }
+
     private List<BistroException> errors = new ArrayList<>();
     @Override
     public List<BistroException> getErrors() { // Empty list in the case of no errors
@@ -107,33 +128,21 @@ public class Table implements Element {
 
     @Override
     public boolean hasErrorsDeep() {
-        if(errors.size() > 0) return true; // Check this element
-
-        // Otherwise check errors in dependencies (recursively)
-        for(Element dep : this.getDependencies()) {
-            if(dep.hasErrorsDeep()) return true;
-        }
-
-        return false;
+        return this.schema.getTopology().hasErrorsDeep(this); // State of dependencies is memoized until the next evaluation
     }
 
     @Override
     public boolean isDirty() {
+        return this.schema.getTopology().isDirty(this); // State of dependencies is memoized until the next evaluation
+    }
+
+    boolean isDirtyOwn() { // Whether this table has to be evaluated independent of the state of its dependencies
 
         // Definition has changed
         if(this.getDefinitionChangedAt() > this.getData().getChangedAt()) return true;
 
-        // One of its dependencies has changes or is dirty
-        for(Element dep : this.getDependencies()) {
-            if(dep instanceof Column) {
-                if(((Column)dep).getData().isChanged()) return true;
-            }
-            else if(dep instanceof Table) {
-                if(((Table)dep).getData().isChanged()) return true;
-            }
-
-            if(dep.isDirty()) return true; // Recursion
-        }
+        // Some incoming project column has to project all facts again into the empty table
+        if(this.isProjFullScope()) return true;
 
         return false;
     }
@@ -156,6 +165,8 @@ public class Table implements Element {
 
         this.errors.clear();
 
+        this.schema.getTopology().resetState(); // This evaluation is a new pass which has to see the latest data and errors of all dependencies
+
         if(this.hasErrorsDeep()) {
             // TODO: Add error: cannot evaluate because of execution error in a dependency
             return;
@@ -174,20 +185,33 @@ public class Table implements Element {
             return;
         }
 
+        this.evaluateOperation();
+
+        this.schema.getTopology().resetState(); // This element is not dirty anymore but its dependents might be
+    }
+
+    public void evaluateUpstream() { // Evaluate this table and its (direct or indirect) dependencies
+        this.schema.evaluateUpstream(Arrays.asList(this));
+    }
+
+    void evaluateOperation() { // Really evaluate without checking the state of dependencies (the caller knows that it is dirty and can be evaluated)
+
+        if(!this.isDerived() || this.getOperationType() == OperationType.ATTRIBUTE) {
+            return;
+        }
+
         //
         // Check if it is a project table (if it is populated by some incoming project column)
         //
 
-        boolean isProj = false;
-        for(Column col : this.schema.getColumns()) {
-            if(col.getOperationType() != OperationType.PROJECT) continue;
-            isProj = true;
-            break;
-        }
-
-        if(isProj) {
-            // Only reset to initial state (empty). Population will be performed by project columns
-            this.getData().reset();
+        boolean isVirtual = this.operation instanceof OpProduct && ((OpProduct)this.operation).isVirtual(); // All combinations exist so project columns only link
+        if(!this.getProjColumns().isEmpty() && !isVirtual) {
+            // Existing records are retained and project columns append only records for new facts
+            // Only a new definition or complete re-projection resets the table to initial state (empty)
+            if(this.getDefinitionChangedAt() > this.getData().getChangedAt() || this.isProjFullScope()) {
+                this.getData().reset();
+            }
+            this.setEvaluated(true);
             return;
         }
 
@@ -197,6 +221,7 @@ public class Table implements Element {
 
         try {
             this.operation.evaluate();
+            this.setEvaluated(true);
         }
         catch(BistroException e) {
             this.errors.add(e);
@@ -206,6 +231,13 @@ public class Table implements Element {
         }
     }
 
+    // Persistent records store whether they are populated for the current definition so that they are retained after reopening
+    private void setEvaluated(boolean evaluated) {
+        if(this.data instanceof PersistentData) {
+            ((PersistentData)this.data).setEvaluated(evaluated);
+        }
+    }
+
     //
     // Table (operation) kind
     //
@@ -218,9 +250,16 @@ public class Table implements Element {
     @Override
     public void setOperation(Operation operation) {
         this.errors.clear();
-        this.definitionChangedAt = System.nanoTime();
+
+        // Records reopened from persistent data were populated for this definition (it is set again after reopening)
+        boolean restored = this.data instanceof PersistentData && ((PersistentData)this.data).isRestored();
+        if(!restored) {
+            this.definitionChangedAt = System.nanoTime();
+        }
+        this.setEvaluated(restored);
 
         this.operation = operation;
+        this.schema.definitionChanged(this); // Dependencies are updated in the topology
 
         if(this.hasDependency(this)) {
             this.noop(); // Reset definition because of failure to set new operation
@@ -246,6 +285,12 @@ public class Table implements Element {
         return this.definitionChangedAt;
     }
 
+    void setOutdated() { // Changes of dependencies have been reset without evaluating this table so its outputs have to be evaluated anew (as if its definition has changed)
+        if(!this.isDerived()) return;
+        this.definitionChangedAt = System.nanoTime();
+        this.setEvaluated(false);
+    }
+
     //
     // Noop table
     //
@@ -266,6 +311,11 @@ public class Table implements Element {
         this.setOperation(op);
     }
 
+    public void product(boolean virtual) { // Virtual product table computes (rather than stores) keys of all combinations from record ids
+        Operation op = new OpProduct(this, virtual);
+        this.setOperation(op);
+    }
+
     public void product(EvalCalculate lambda, ColumnPath... paths) {
         Operation op = new OpProduct(this, lambda, paths);
         this.setOperation(op);
@@ -285,6 +335,11 @@ public class Table implements Element {
         this.setOperation(op);
     }
 
+    public void range(Object origin, Object period, Long length, boolean virtual) { // Virtual range table computes (rather than stores) intervals and populates only used intervals
+        Operation op = new OpRange(this, origin, period, length, virtual);
+        this.setOperation(op);
+    }
+
     //
     // Convenience methods
     //
@@ -298,6 +353,13 @@ public class Table implements Element {
         return ret;
     }
 
+    protected boolean isProjFullScope() { // Whether some incoming project-column will evaluate all its facts
+        for(Column col : this.getProjColumns()) {
+            if(col.getOperation() instanceof OpLink && ((OpLink)col.getOperation()).isFullScope()) return true;
+        }
+        return false;
+    }
+
     public List<Column> getProjColumns() { // Get all incoming project-columns
         List<Column> ret = new ArrayList<>();
         for(Column col : this.getSchema().getColumns()) {
@@ -317,23 +379,16 @@ public class Table implements Element {
         return "[" + name + "] - " + this.getOperationType();
     }
 
-    @Override
-    public boolean equals(Object aThat) {
-        if (this == aThat) return true;
-        if ( !(aThat instanceof Table) ) return false;
-
-        Table that = (Table)aThat;
-
-        if(!that.getId().toString().equals(id.toString())) return false;
-
-        return true;
+    public Table(Schema schema, String name) {
+        this(schema, name, schema.getStorageFactory());
     }
 
-    public Table(Schema schema, String name) {
+    public Table(Schema schema, String name, StorageFactory storageFactory) {
         this.schema = schema;
         this.id = UUID.randomUUID();
         this.name = name;
 
-        this.data = new TableDataImpl(this);
+        this.storageFactory = storageFactory;
+        this.data = storageFactory.createTableData(this);
     }
 }
@@ -9,6 +9,10 @@ public interface TableData {
 
     Range add(long count);
 
+    // Removed records are not valid anymore but dependents still get them as the removed range until changes are reset.
+    // Their values are freed in column data immediately unless some dependent reads them during its next evaluation (accumulate removers, rolling windows,
+    // elements of other tables which reach this table through link paths). The schema topology determines it when it is updated (see Table.isRemovedRead).
+    // In this case, they are freed only when changes are reset after evaluation so the table (and a ring buffer) keeps them until the next evaluation.
     long remove();
 
     Range remove(long count);
@@ -37,6 +41,22 @@ public interface TableData {
     // ISSUE: If not found, should output be NULL or -1? On one hand, we say that links are Long. But Long can be NULL. In future, it could be long which cannot be NULL.
     long findValues(List<Object> values, List<Column> columns);
 
+    // Create a hash index on the specified columns (if it does not exist yet) which will be used by findValues with the same list of columns.
+    // The index is maintained incrementally when records are added, removed or changed via setValues.
+    // Values changed directly in column data are re-indexed before the next search using the changed ranges registered by generic setters of column data.
+    // Values set by typed setters (which do not register changes) are not detected.
+    void createIndex(List<Column> columns);
+    void createIndex(Column... columns);
+
+    // Class of the keys (Long or Integer) if the column has been indexed by a primitive index (see createIndex) so that its keys can be searched in batches, or null otherwise.
+    // Numeric columns and links get a primitive index independent of how their values are stored.
+    Class<?> getLongIndexClass(Column column);
+
+    // Find ids for many numeric (long or int) keys of one column (-1 if not found) by storing them in the output array.
+    // It is possible only if the column has been indexed by a primitive index (see createIndex) - otherwise false is returned and nothing is found.
+    // The keys are compared as values of the index class (see getLongIndexClass) so values of other classes have to be searched individually.
+    boolean findValues(long[] keys, int length, Column column, long[] ids);
+
     //
     // Tracking changes.
     //
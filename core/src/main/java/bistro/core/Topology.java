@@ -3,7 +3,15 @@ package bistro.core;
 import bistro.core.operations.OpCalculate;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Topology {
 
@@ -21,41 +29,223 @@ public class Topology {
         else this.create_for_element();
     }
 
-    protected void create_for_schema() { // Build a list of layers of the graph
+    protected void create_for_schema() { // Build the dependency graph and a list of its layers
 
-        this.layers = new ArrayList<>(); // Each layer is a list of elements which depend on elements of previous layers
+        this.dependencies.clear();
+        this.dependents.clear();
+        this.levels.clear();
 
         List<Element> all = new ArrayList<>();
         all.addAll(this.schema.getColumns());
         all.addAll(this.schema.getTables());
 
-        List<Element> done = new ArrayList<>();
+        for(Element elem : all) {
+            this.addEdges(elem);
+        }
 
-        while(true) { // One pass for each new (non-empty) layer
+        for(Element elem : all) {
+            this.computeLevel(elem, new HashSet<>());
+        }
 
-            List<Element> layer = new ArrayList<>();
+        this.createLayers();
 
-            for(Element elem : all) {
+        this.updateRemovedRead(this.schema.getTables());
+    }
 
-                if(done.contains(elem)) continue;
+    //
+    // Dependency graph
+    //
 
-                // Translate individual elements
-                // TODO: It has to be done a separate loop for all elements (currently we have it only for calc-columns)
-                if(elem instanceof Column && elem.getOperationType() == OperationType.CALCULATE) {
-                    ((OpCalculate)elem.getOperation()).translate();
-                }
+    // Forward (dependencies) and reverse (dependents) adjacency sets of all elements of the schema
+    // Only elements with new definitions and their (direct or indirect) dependents are processed when the graph is updated
+    Map<Element, Set<Element>> dependencies = new HashMap<>();
+    Map<Element, Set<Element>> dependents = new HashMap<>();
+    Map<Element, Integer> levels = new HashMap<>(); // Layer number or -1 if the element cannot be evaluated (e.g., cyclic or deleted dependencies)
 
-                boolean isNext = true;
-                for(Element dep : elem.getDependencies()) {
-                    if(!done.contains(dep)) { isNext = false; break; }
-                }
-                if(isNext) layer.add(elem);
+    public Set<Element> getDependencies(Element elem) {
+        Set<Element> ret = this.dependencies.get(elem);
+        return ret != null ? ret : Collections.emptySet();
+    }
+
+    public Set<Element> getDependents(Element elem) {
+        Set<Element> ret = this.dependents.get(elem);
+        return ret != null ? ret : Collections.emptySet();
+    }
+
+    // Process new definitions of these elements including elements which have been added to or deleted from the schema
+    public void update(Collection<Element> elements) {
+
+        // Elements the layers of which might change
+        Set<Element> affected = new LinkedHashSet<>();
+        List<Element> next = new ArrayList<>();
+
+        // Tables which might get or lose dependents
+        Set<Table> tables = new LinkedHashSet<>();
+
+        for(Element elem : elements) {
+            this.getDependencies(elem).forEach(x -> tables.add(getTable(x)));
+            this.removeEdges(elem);
+            if(this.isInSchema(elem)) {
+                this.addEdges(elem);
             }
+            this.getDependencies(elem).forEach(x -> tables.add(getTable(x)));
+            tables.add(getTable(elem));
+            next.add(elem);
+        }
 
-            if(layer.isEmpty()) break;
+        while(!next.isEmpty()) {
+            Element elem = next.remove(next.size() - 1);
+            if(!affected.add(elem)) continue;
+            next.addAll(this.getDependents(elem));
+        }
+
+        Map<Element, Integer> oldLevels = new HashMap<>();
+        for(Element elem : affected) {
+            oldLevels.put(elem, this.levels.remove(elem));
+        }
+        for(Element elem : affected) {
+            this.computeLevel(elem, new HashSet<>());
+        }
+
+        this.updateLayers(oldLevels);
+
+        this.updateRemovedRead(tables);
+    }
+
+    // Layers with only these elements and their (direct or indirect) dependencies
+    // They are cached until the graph is updated
+    private Map<List<Element>, List<List<Element>>> upstreamLayers = new HashMap<>();
+
+    public List<List<Element>> getUpstreamLayers(List<Element> targets) {
+        List<List<Element>> ret = this.upstreamLayers.get(targets);
+        if(ret != null) return ret;
+
+        Set<Element> upstream = new HashSet<>();
+        List<Element> next = new ArrayList<>(targets);
+        while(!next.isEmpty()) {
+            Element elem = next.remove(next.size() - 1);
+            if(!upstream.add(elem)) continue;
+            next.addAll(this.getDependencies(elem));
+        }
+
+        ret = new ArrayList<>();
+        for(List<Element> layer : this.layers) {
+            List<Element> upstreamLayer = new ArrayList<>();
+            for(Element elem : layer) {
+                if(upstream.contains(elem)) upstreamLayer.add(elem);
+            }
+            if(!upstreamLayer.isEmpty()) ret.add(upstreamLayer);
+        }
+
+        this.upstreamLayers.put(new ArrayList<>(targets), ret);
+        return ret;
+    }
+
+    private static Table getTable(Element elem) {
+        return elem instanceof Table ? (Table)elem : ((Column)elem).getInput();
+    }
+
+    private boolean isInSchema(Element elem) {
+        if(elem instanceof Column) {
+            return this.schema.getColumnById(((Column)elem).getId().toString()) == elem;
+        }
+        else {
+            return this.schema.getTableById(((Table)elem).getId().toString()) == elem;
+        }
+    }
+
+    private void addEdges(Element elem) {
+
+        // Translate individual elements
+        // TODO: It has to be done for all elements (currently we have it only for calc-columns)
+        if(elem instanceof Column && elem.getOperationType() == OperationType.CALCULATE) {
+            ((OpCalculate)elem.getOperation()).translate();
+        }
+
+        List<Element> deps = elem.getDependencies();
+        Set<Element> set = new LinkedHashSet<>();
+        if(deps != null) set.addAll(deps);
+
+        this.dependencies.put(elem, set);
+        for(Element dep : set) {
+            this.dependents.computeIfAbsent(dep, x -> new LinkedHashSet<>()).add(elem);
+        }
+    }
+
+    private void removeEdges(Element elem) {
+        Set<Element> deps = this.dependencies.remove(elem);
+        if(deps == null) return;
+        for(Element dep : deps) {
+            Set<Element> set = this.dependents.get(dep);
+            if(set != null) set.remove(elem);
+        }
+    }
+
+    private int computeLevel(Element elem, Set<Element> visiting) {
+        Integer level = this.levels.get(elem);
+        if(level != null) return level;
+
+        Set<Element> deps = this.dependencies.get(elem);
+        if(deps == null) return -1; // Not in the schema
+        if(!visiting.add(elem)) return -1; // Cyclic dependency
+
+        level = 0;
+        for(Element dep : deps) {
+            int depLevel = this.computeLevel(dep, visiting);
+            if(depLevel < 0) { level = -1; break; }
+            level = Math.max(level, depLevel + 1);
+        }
+
+        visiting.remove(elem);
+        this.levels.put(elem, level);
+        return level;
+    }
+
+    private void createLayers() { // Each layer is a list of elements which depend on elements of previous layers
+
+        this.layers = new ArrayList<>();
+        this.upstreamLayers.clear();
+
+        List<Element> all = new ArrayList<>();
+        all.addAll(this.schema.getColumns());
+        all.addAll(this.schema.getTables());
+
+        for(Element elem : all) {
+            Integer level = this.levels.get(elem);
+            if(level == null || level < 0) continue;
+            while(this.layers.size() <= level) this.layers.add(new ArrayList<>());
+            this.layers.get(level).add(elem);
+        }
+    }
+
+    // Move elements which have changed their levels to other layers. Other elements remain in their layers
+    // Only layers of old and new levels are changed (an element is normally moved together with its dependents to the next layers)
+    private void updateLayers(Map<Element, Integer> oldLevels) {
+
+        this.upstreamLayers.clear();
+
+        Map<Integer, Set<Element>> removed = new HashMap<>();
+        List<Element> added = new ArrayList<>();
+        for(Map.Entry<Element, Integer> entry : oldLevels.entrySet()) {
+            int oldLevel = entry.getValue() == null ? -1 : entry.getValue();
+            int level = this.levels.getOrDefault(entry.getKey(), -1);
+            if(oldLevel == level) continue;
+            if(oldLevel >= 0) removed.computeIfAbsent(oldLevel, x -> new HashSet<>()).add(entry.getKey());
+            if(level >= 0) added.add(entry.getKey());
+        }
+
+        for(Map.Entry<Integer, Set<Element>> entry : removed.entrySet()) {
+            this.layers.get(entry.getKey()).removeIf(entry.getValue()::contains);
+        }
+        for(Element elem : added) {
+            int level = this.levels.get(elem);
+            while(this.layers.size() <= level) this.layers.add(new ArrayList<>());
+            this.layers.get(level).add(elem);
+        }
 
-            this.layers.add(layer);
-            done.addAll(layer);
+        // Each element depends on some element of the previous layer so only the last layers might become empty
+        while(!this.layers.isEmpty() && this.layers.get(this.layers.size() - 1).isEmpty()) {
+            this.layers.remove(this.layers.size() - 1);
         }
     }
 
@@ -86,6 +276,113 @@ public class Topology {
         }
     }
 
+    //
+    // Removed records
+    //
+
+    // Whether values of removed records of the table are read by some dependent during its next evaluation
+    // Accumulate columns subtract removed facts, rolling columns find the old windows which contained them, and
+    // elements of other tables might read them through link paths (their links are evaluated later than the records are removed)
+    // The state is stored in the tables so that removing records does not need the topology
+    private void updateRemovedRead(Collection<Table> tables) {
+        for(Table table : tables) {
+            if(table == null || !this.isInSchema(table)) continue;
+            boolean removedRead = this.isRemovedRead(table, table);
+            for(Column column : this.schema.getColumns(table)) {
+                if(removedRead) break;
+                removedRead = this.isRemovedRead(column, table);
+            }
+            table.setRemovedRead(removedRead);
+        }
+    }
+
+    private boolean isRemovedRead(Element elem, Table table) {
+        for(Element dep : this.getDependents(elem)) {
+            if(getTable(dep) != table) return true; // Reads the table through links
+            OperationType type = dep.getOperationType();
+            if(type == OperationType.ACCUMULATE || type == OperationType.ROLL) return true;
+        }
+        return false;
+    }
+
+    //
+    // State of elements
+    //
+
+    // Dirty and error state is computed only once for each element by using the (memoized) state of its dependencies
+    // During schema evaluation, it is computed for an element after its dependencies have been evaluated, and it is not changed by evaluating this element
+    // Elements might be evaluated concurrently
+    // Outside of evaluation, the state is memoized until the next evaluation (of the schema or of an individual element) or until definitions change
+    private Map<Element, Boolean> dirty = new ConcurrentHashMap<>();
+    private Map<Element, Boolean> errors = new ConcurrentHashMap<>();
+
+    public void resetState() { // Forget the state, normally before a new evaluation pass
+        this.dirty.clear();
+        this.errors.clear();
+    }
+
+    public boolean isDirty(Element elem) {
+        Boolean ret = this.dirty.get(elem);
+        if(ret != null) return ret;
+
+        if(elem instanceof Column) {
+            ret = ((Column)elem).isDirtyOwn();
+        }
+        else {
+            ret = ((Table)elem).isDirtyOwn();
+        }
+
+        // One of its dependencies has changes or is dirty
+        for(Element dep : elem.getDependencies()) {
+            if(ret) break;
+
+            if(dep instanceof Column) {
+                ret = ((Column)dep).getData().isChanged();
+            }
+            else if(dep instanceof Table) {
+                ret = ((Table)dep).getData().isChanged();
+            }
+
+            if(!ret) ret = this.isDirty(dep); // Recursion (only for dependencies with unknown state)
+        }
+
+        this.dirty.put(elem, ret);
+        return ret;
+    }
+
+    public boolean hasErrorsDeep(Element elem) {
+        Boolean ret = this.errors.get(elem);
+        if(ret != null) return ret;
+
+        ret = !elem.getErrors().isEmpty(); // Check this element
+
+        // Otherwise check errors in dependencies
+        for(Element dep : elem.getDependencies()) {
+            if(ret) break;
+            ret = this.hasErrorsDeep(dep); // Recursion (only for dependencies with unknown state)
+        }
+
+        this.errors.put(elem, ret);
+        return ret;
+    }
+
+    public void setErrors(Element elem) { // New errors of this element (e.g., after its evaluation)
+        this.errors.put(elem, true);
+    }
+
+    // Whether the element depends on the other element directly or indirectly
+    public static boolean hasDependency(Element elem, Element other) {
+        Set<Element> visited = new HashSet<>();
+        List<Element> next = new ArrayList<>(elem.getDependencies());
+        while(!next.isEmpty()) {
+            Element dep = next.remove(next.size() - 1);
+            if(dep == other) return true;
+            if(!visited.add(dep)) continue;
+            next.addAll(dep.getDependencies());
+        }
+        return false;
+    }
+
     public Topology(Column column) {
         this.element = column;
         this.schema = column.getSchema();
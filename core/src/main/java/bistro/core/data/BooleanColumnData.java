@@ -0,0 +1,68 @@
+package bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing output values in an array of primitive booleans.
+ * Values are boxed as Boolean only if they are accessed via the generic methods.
+ */
+public class BooleanColumnData extends PrimitiveColumnData {
+
+    private boolean[] values = new boolean[0];
+
+    //
+    // Typed access (no boxing)
+    //
+
+    // Value of a null output is undefined so use isNull() if nulls are possible
+    public boolean getBoolean(long id) { return this.values[id2offset(id)]; }
+
+    public void setBoolean(long id, boolean value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.setNullAt(offset, false);
+    }
+
+    //
+    // Primitive array management
+    //
+
+    @Override
+    protected void resize(int capacity) {
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(this.values, from, this.values, to, length);
+    }
+
+    @Override
+    protected Object read(int offset) {
+        return this.values[offset];
+    }
+
+    @Override
+    protected void write(int offset, Object value) {
+        this.values[offset] = (Boolean)value;
+    }
+
+    @Override
+    protected void write(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, (Boolean)value);
+    }
+
+    @Override
+    protected int compare(int offset, Object value) {
+        return Boolean.compare(this.values[offset], (Boolean)value);
+    }
+
+    //
+    // Creation
+    //
+
+    public BooleanColumnData(long start, long end) {
+        super();
+        this.init(start, end);
+    }
+}
@@ -0,0 +1,121 @@
+package bistro.core.data;
+
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ids of changed outputs of column data stored as ordered disjoint ranges in two primitive arrays (starts and ends).
+ * Consecutive ids (e.g., outputs of appended records) extend one range so that typical changes need only few ranges.
+ * If there are too many ranges then the two closest ranges are merged so that ranges might also include some unchanged ids.
+ * Registration is not thread-safe. It is done for each id set by a generic setter and hence it must be cheap: an id which is within
+ * or directly after the last range (e.g., sequential writes) only extends this range. Writers which set outputs of different ids
+ * concurrently (e.g., parallel morsels) write batches without registration and their ranges are registered after all of them are done.
+ */
+class ChangedRanges {
+
+    private static int MAX_COUNT = 64;
+
+    private long[] starts = new long[4];
+    private long[] ends = new long[4];
+    private int count = 0;
+
+    // Number of registrations (including those which did not change the ranges) so that it is possible to detect new changes
+    private long version = 0;
+    public long getVersion() {
+        return this.version;
+    }
+    // Version at the time of the last clear. Changes registered before it are not available anymore.
+    private long clearedVersion = 0;
+    public long getClearedVersion() {
+        return this.clearedVersion;
+    }
+
+    // Changed ranges of the column data (null if its changes are not tracked by ranges)
+    public static ChangedRanges of(ColumnData data) {
+        if(data instanceof ColumnDataImpl) return ((ColumnDataImpl)data).changedRanges;
+        if(data instanceof PrimitiveColumnData) return ((PrimitiveColumnData)data).changedRanges;
+        if(data instanceof RingColumnData) return ((RingColumnData)data).changedRanges;
+        if(data instanceof DirectColumnData) return ((DirectColumnData)data).changedRanges;
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    public void add(long start, long end) {
+        if(start >= end) return;
+        this.version++;
+
+        // Within or directly after the last range
+        if(this.count > 0 && start >= this.starts[this.count - 1] && start <= this.ends[this.count - 1]) {
+            if(end > this.ends[this.count - 1]) this.ends[this.count - 1] = end;
+            return;
+        }
+
+        // Ranges after the new range which are not adjacent to it (most often none since changes are at the end)
+        int i = this.count;
+        while(i > 0 && this.starts[i - 1] > end) i--;
+
+        // Ranges before the new range which overlap or are adjacent to it are merged with it
+        int j = i;
+        while(j > 0 && this.ends[j - 1] >= start) {
+            j--;
+            if(this.starts[j] < start) start = this.starts[j];
+            if(this.ends[j] > end) end = this.ends[j];
+        }
+
+        if(j == i) { // Insert a new range
+            if(this.count == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.count * 2);
+                this.ends = Arrays.copyOf(this.ends, this.count * 2);
+            }
+            System.arraycopy(this.starts, i, this.starts, i + 1, this.count - i);
+            System.arraycopy(this.ends, i, this.ends, i + 1, this.count - i);
+            this.count++;
+        }
+        else if(i - j > 1) { // Several ranges are replaced by one range
+            System.arraycopy(this.starts, i, this.starts, j + 1, this.count - i);
+            System.arraycopy(this.ends, i, this.ends, j + 1, this.count - i);
+            this.count -= i - j - 1;
+        }
+        this.starts[j] = start;
+        this.ends[j] = end;
+
+        if(this.count > MAX_COUNT) {
+            this.mergeClosest();
+        }
+    }
+
+    // Merge two ranges with the smallest gap between them
+    private void mergeClosest() {
+        int k = 0;
+        for(int i = 1; i < this.count - 1; i++) {
+            if(this.starts[i + 1] - this.ends[i] < this.starts[k + 1] - this.ends[k]) k = i;
+        }
+        this.ends[k] = this.ends[k + 1];
+        System.arraycopy(this.starts, k + 2, this.starts, k + 1, this.count - k - 2);
+        System.arraycopy(this.ends, k + 2, this.ends, k + 1, this.count - k - 2);
+        this.count--;
+    }
+
+    // Changed ranges restricted to the valid ids
+    public List<Range> get(Range idRange) {
+        List<Range> ret = new ArrayList<>();
+        for(int i = 0; i < this.count; i++) {
+            long start = Math.max(this.starts[i], idRange.start);
+            long end = Math.min(this.ends[i], idRange.end);
+            if(start < end) ret.add(new Range(start, end));
+        }
+        return ret;
+    }
+
+    public void clear() {
+        this.count = 0;
+        this.clearedVersion = this.version;
+    }
+}
@@ -4,11 +4,16 @@ import bistro.core.ColumnData;
 import bistro.core.Range;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * It is responsible for explicit representation of a function, that is, a mapping from input ids to output columnPaths.
  * This representation can be changed by setting outputs for certain inputs. And it is possible to request outputs.
+ *
+ * Output values are stored in fixed-size segments which are referenced from a segment directory.
+ * Segment boundaries are aligned with ids so that appending and removing records never copies values:
+ * new segments are allocated at the end and old segments are released at the start.
  */
 public class ColumnDataImpl implements ColumnData {
 
@@ -23,17 +28,18 @@ public class ColumnDataImpl implements ColumnData {
 
     private Range idRange = new Range(); // All valid input ids for which outputs are stored - other ids are not valid and will produce exception or arbitrary value (garbage)
 
-    private static int INITIAL_SIZE = 10;
-    private static int INCREMENT_SIZE = 5;
-    private Object[] values; // This array stores the output columnPaths
+    private static int SEGMENT_BITS = 10;
+    private static int SEGMENT_SIZE = 1 << SEGMENT_BITS; // Number of values in one segment
+    private static int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static int INITIAL_SEGMENTS = 4;
 
-    private int startIdOffset = 0; // Cell of the array product the start id is stored
+    private Object[][] segments; // Segment directory. Each segment stores SEGMENT_SIZE output values
+    private int firstSegment = 0; // Cell of the directory where the first segment is stored
+    private int segmentCount = 0; // Number of allocated segments starting from the first one
+    private long firstSegmentNo = 0; // Number of the first segment (id of its first value divided by the segment size)
 
-    private int id2offset(long id) {
-        return this.startIdOffset + ((int) (id - this.idRange.start));
-    }
-    private long offset2id(int offset) {
-        return this.idRange.start + (offset - this.startIdOffset);
+    private Object[] segment(long id) {
+        return this.segments[this.firstSegment + (int)((id >>> SEGMENT_BITS) - this.firstSegmentNo)];
     }
 
     //
@@ -41,22 +47,29 @@ public class ColumnDataImpl implements ColumnData {
     //
 
     @Override
-    public Object getValue(long id) { return this.values[id2offset(id)]; }
+    public Object getValue(long id) { return this.segment(id)[(int)id & SEGMENT_MASK]; }
 
-    // Note: we do not set the change flag by assuming that only newly added records are changed - if it is not so then it has to be set manually
+    // Note: generic setters register the ids of changed outputs so that dependents re-evaluate only them (typed setters do not register changes and they have to be registered manually)
     // Note: methods are not safe - they do not check the validity of arguments (ids, values etc.)
 
     @Override
-    public void setValue(long id, Object value) { this.values[id2offset(id)] = value; }
+    public void setValue(long id, Object value) {
+        this.segment(id)[(int)id & SEGMENT_MASK] = value;
+        this.changedRanges.add(id, id + 1);
+    }
+
+    @Override
+    public void setValues(long start, int length, Object[] values) {
+        for(int k = 0; k < length; k++) {
+            long id = start + k;
+            this.segment(id)[(int)id & SEGMENT_MASK] = values[k];
+        }
+    }
 
     @Override
     public void setValue(Range range, Object value) {
-        Arrays.fill(
-                this.values,
-                this.id2offset(range.start),
-                this.id2offset(range.end),
-                value
-        );
+        this.fill(range.start, range.end, value);
+        this.setChanged(range);
     }
     @Override
     public void setValue(Range range) { // Default value
@@ -65,12 +78,7 @@ public class ColumnDataImpl implements ColumnData {
 
     @Override
     public void setValue(Object value) {
-        Arrays.fill(
-                this.values,
-                this.startIdOffset,
-                (int)(this.startIdOffset + this.idRange.getLength()),
-                value
-        );
+        this.fill(this.idRange.start, this.idRange.end, value);
         this.setChanged();
     }
     @Override
@@ -79,6 +87,19 @@ public class ColumnDataImpl implements ColumnData {
         this.setChanged();
     }
 
+    private void fill(long start, long end, Object value) { // Segment by segment
+        for(long i = start; i < end; ) {
+            long segmentEnd = Math.min(end, (i | SEGMENT_MASK) + 1);
+            Arrays.fill(
+                    this.segment(i),
+                    (int)i & SEGMENT_MASK,
+                    (int)((segmentEnd - 1) & SEGMENT_MASK) + 1,
+                    value
+            );
+            i = segmentEnd;
+        }
+    }
+
     private Object defaultValue = null;
     @Override
     public Object getDefaultValue() { return this.defaultValue; }
@@ -92,58 +113,67 @@ public class ColumnDataImpl implements ColumnData {
     // Input range
     //
 
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
     @Override
     public void add() {
         this.add(1);
-        this.setChanged();
     }
     @Override
-    public void add(long count) { // Remove the oldest records with lowest ids
+    public void add(long count) {
+
+        // Allocate new segments if the last id will not fit into the existing segments
+        long lastSegmentNo = (this.idRange.end + count - 1) >>> SEGMENT_BITS;
+        int requiredCount = (int)(lastSegmentNo - this.firstSegmentNo + 1);
+        if(count > 0 && requiredCount > this.segmentCount) {
+
+            // The directory itself grows geometrically (it is small and only references are copied)
+            if(this.firstSegment + requiredCount > this.segments.length) {
+                int newLength = Math.max(this.segments.length, INITIAL_SEGMENTS);
+                while(newLength < requiredCount * 2) newLength *= 2;
+                Object[][] newSegments = new Object[newLength][];
+                System.arraycopy(this.segments, this.firstSegment, newSegments, 0, this.segmentCount);
+                this.segments = newSegments;
+                this.firstSegment = 0;
+            }
 
-        // Check if not enough space and allocate more if necessary
-        int additionalSize = (this.startIdOffset + (int)idRange.getLength() + (int)count) - this.values.length;
-        if(additionalSize > 0) { // More space is needed
-            additionalSize = ((additionalSize/INCREMENT_SIZE) + 1) * INCREMENT_SIZE; // How many increments we need to cover the additional size
-            this.values = Arrays.copyOf(this.values, this.values.length + additionalSize);
+            for(int i = this.segmentCount; i < requiredCount; i++) {
+                this.segments[this.firstSegment + i] = new Object[SEGMENT_SIZE];
+            }
+            this.segmentCount = requiredCount;
         }
 
         // Initialize
-        Arrays.fill(
-                this.values,
-                this.id2offset(this.idRange.end),
-                this.id2offset(this.idRange.end) + (int)count,
-                this.defaultValue
-        );
+        this.fill(this.idRange.end, this.idRange.end + count, this.defaultValue);
 
         this.idRange.end += count;
-
-        this.setChanged();
     }
 
     @Override
     public void remove() {
         this.remove(1);
-        this.setChanged();
     }
     @Override
     public void remove(long count) { // Remove the specified number of oldest records
-        this.startIdOffset += count;
         this.idRange.start += count;
 
-        this.setChanged();
-
         this.gc();
     }
     @Override
     public void removeAll() {
         this.remove(this.idRange.getLength());
-        this.setChanged();
     }
 
     @Override
     public void reset(long start, long end) {
-        // Allocate memory
-        this.values = new Object[INITIAL_SIZE];
+        // Release memory
+        this.segments = new Object[INITIAL_SEGMENTS][];
+        this.firstSegment = 0;
+        this.segmentCount = 0;
+        this.firstSegmentNo = start >>> SEGMENT_BITS;
 
         // Initially no data but the ids start from what is specified in parameters
         this.idRange.start = start;
@@ -158,43 +188,36 @@ public class ColumnDataImpl implements ColumnData {
     }
 
     @Override
-    public void gc() { // Garbage collection. Free some space if there is enough in the beginning of the array
-        if(this.startIdOffset > INCREMENT_SIZE) {
-            // Shift values to the beginning
-            System.arraycopy(
-                    this.values,
-                    this.startIdOffset,
-                    this.values,
-                    0,
-                    (int)this.idRange.getLength()
-            );
-            this.startIdOffset = 0;
-
-            // Free space at the end of the allocated array
-            if(this.values.length >= INITIAL_SIZE + INCREMENT_SIZE) { // Do not make smaller than initial size
-                int additionalSize = this.values.length - (int) idRange.getLength(); // Unused space
-                additionalSize = (additionalSize / INCREMENT_SIZE) * INCREMENT_SIZE; // How much (whole increments) we want to remove
-                this.values = Arrays.copyOf(this.values, this.values.length - additionalSize);
-            }
-        }
+    public void gc() { // Garbage collection. Release segments which store only removed ids (values are not copied)
+        long startSegmentNo = this.idRange.start >>> SEGMENT_BITS;
+        int unused = (int)Math.min(startSegmentNo - this.firstSegmentNo, this.segmentCount - 1); // Retain at least one segment for appending
+        if(unused <= 0) return;
+
+        Arrays.fill(this.segments, this.firstSegment, this.firstSegment + unused, null);
+        this.firstSegment += unused;
+        this.segmentCount -= unused;
+        this.firstSegmentNo += unused;
     }
 
-    // Return insert index
+    // Return id of the found value or (-(insertion id) - 1) if not found
     @Override
     public long findSorted(Object value) {
 
         // The data is supposed to be sorted (for example, range table or time stamps)
-        int insertIndex = Arrays.binarySearch(
-                this.values,
-                this.startIdOffset,
-                (int)(this.startIdOffset + this.idRange.getLength()),
-                value
-        );
-        // TODO: In the case of multiple equal values, the index can be any. It is better if we return the first or last element of such intervals. So we need to check for equality and return start or end.
+        long low = this.idRange.start;
+        long high = this.idRange.end - 1;
 
-        long id = offset2id(insertIndex);
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = ((Comparable)this.getValue(mid)).compareTo(value);
 
-        return id;
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid; // Found
+        }
+        // TODO: In the case of multiple equal values, the index can be any. It is better if we return the first or last element of such intervals. So we need to check for equality and return start or end.
+
+        return -(low + 1); // Not found
     }
 
     @Override
@@ -203,10 +226,9 @@ public class ColumnDataImpl implements ColumnData {
         // Values must be comparable (implement Comparable interface)
 
         // Start from the last/old/smallest ids and move in the loop until a greater or equal value is found
-        int start = this.id2offset(this.idRange.start);
-        int end = this.id2offset(this.idRange.end);
-        for(int i = start; i < end; i++) {
-            Object val = this.values[i];
+        long end = this.idRange.end;
+        for(long i = this.idRange.start; i < end; i++) {
+            Object val = this.getValue(i);
             if(val == null) continue;
             if(((Comparable)val).compareTo(value) < 0) { // It is still small
                 continue;
@@ -215,9 +237,7 @@ public class ColumnDataImpl implements ColumnData {
             break;
         }
 
-        long id = offset2id(end);
-
-        return id;
+        return end;
     }
 
     //
@@ -227,9 +247,11 @@ public class ColumnDataImpl implements ColumnData {
     private long resetChangedAt; // Time of reset changes
     private long changedAt; // Time of latest change
 
+    ChangedRanges changedRanges = new ChangedRanges(); // Ids with changed outputs
+
     @Override
     public boolean isChanged() {
-        return this.changedAt > this.resetChangedAt;
+        return this.changedAt > this.resetChangedAt || !this.changedRanges.isEmpty();
     }
 
     @Override
@@ -237,9 +259,21 @@ public class ColumnDataImpl implements ColumnData {
         this.changedAt = System.nanoTime();
     }
 
+    @Override
+    public void setChanged(Range range) {
+        this.changedRanges.add(range.start, range.end);
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        if(this.changedAt > this.resetChangedAt) return Arrays.asList(this.getIdRange()); // All outputs
+        return this.changedRanges.get(this.getIdRange());
+    }
+
     @Override
     public void resetChanged() {
         this.resetChangedAt = this.changedAt;
+        this.changedRanges.clear();
     }
 
     @Override
@@ -0,0 +1,419 @@
+package bistro.core.data;
+
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Column data which stores numeric output values outside of the Java heap in direct byte buffers.
+ * Values are stored in fixed-size segments (aligned with ids) and each segment has the following little-endian layout:
+ * SEGMENT_SIZE values of the column type followed by a null bitmap with one bit per value (a set bit means that the output is null).
+ * Only the segment directory and a few fields are on the heap.
+ */
+public class DirectColumnData implements ColumnData {
+
+    public enum Type {
+        LONG(8),
+        DOUBLE(8),
+        INT(4),
+        ;
+
+        private int width; // Bytes per value
+
+        public int getWidth() {
+            return width;
+        }
+
+        private Type(int width) {
+            this.width = width;
+        }
+    }
+
+    private final UUID id;
+    public UUID getId() {
+        return this.id;
+    }
+
+    protected final Type type;
+    public Type getType() {
+        return this.type;
+    }
+
+    //
+    // Data
+    //
+
+    protected Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    protected static int SEGMENT_BITS = 16;
+    protected static int SEGMENT_SIZE = 1 << SEGMENT_BITS; // Number of values in one segment
+    protected static int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static int INITIAL_SEGMENTS = 4;
+
+    private ByteBuffer[] segments; // Segment directory
+    private int firstSegment = 0; // Cell of the directory where the first segment is stored
+    private int segmentCount = 0; // Number of allocated segments starting from the first one
+    private long firstSegmentNo = 0; // Number of the first segment (id of its first value divided by the segment size)
+
+    protected int getSegmentBytes() {
+        return SEGMENT_SIZE * this.type.getWidth() + SEGMENT_SIZE / 8;
+    }
+
+    // Allocate memory for one segment with the specified number (id of its first value divided by the segment size)
+    protected ByteBuffer allocateSegment(long segmentNo) {
+        return ByteBuffer.allocateDirect(this.getSegmentBytes()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private ByteBuffer segment(long id) {
+        return this.segments[this.firstSegment + (int)((id >>> SEGMENT_BITS) - this.firstSegmentNo)];
+    }
+    private int position(long id) {
+        return ((int)id & SEGMENT_MASK) * this.type.getWidth();
+    }
+    private int nullPosition(long id) {
+        return SEGMENT_SIZE * this.type.getWidth() + (((int)id & SEGMENT_MASK) >>> 3);
+    }
+
+    //
+    // Typed access (no boxing). Value of a null output is undefined so use isNull() if nulls are possible
+    //
+
+    public boolean isNull(long id) {
+        return (this.segment(id).get(this.nullPosition(id)) & (1 << (id & 7))) != 0;
+    }
+    protected void setNull(long id, boolean isNull) {
+        ByteBuffer segment = this.segment(id);
+        int pos = this.nullPosition(id);
+        byte bits = segment.get(pos);
+        if(isNull) bits |= (1 << (id & 7));
+        else bits &= ~(1 << (id & 7));
+        segment.put(pos, bits);
+    }
+
+    public long getLong(long id) {
+        ByteBuffer segment = this.segment(id);
+        switch(this.type) {
+            case LONG: return segment.getLong(this.position(id));
+            case INT: return segment.getInt(this.position(id));
+            default: return (long)segment.getDouble(this.position(id));
+        }
+    }
+    public void setLong(long id, long value) {
+        ByteBuffer segment = this.segment(id);
+        switch(this.type) {
+            case LONG: segment.putLong(this.position(id), value); break;
+            case INT: segment.putInt(this.position(id), (int)value); break;
+            default: segment.putDouble(this.position(id), (double)value);
+        }
+        this.setNull(id, false);
+    }
+
+    public double getDouble(long id) {
+        ByteBuffer segment = this.segment(id);
+        switch(this.type) {
+            case DOUBLE: return segment.getDouble(this.position(id));
+            case INT: return segment.getInt(this.position(id));
+            default: return (double)segment.getLong(this.position(id));
+        }
+    }
+    public void setDouble(long id, double value) {
+        ByteBuffer segment = this.segment(id);
+        switch(this.type) {
+            case DOUBLE: segment.putDouble(this.position(id), value); break;
+            case INT: segment.putInt(this.position(id), (int)value); break;
+            default: segment.putLong(this.position(id), (long)value);
+        }
+        this.setNull(id, false);
+    }
+
+    public int getInt(long id) {
+        return (int)this.getLong(id);
+    }
+    public void setInt(long id, int value) {
+        this.setLong(id, value);
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) {
+        if(this.isNull(id)) return null;
+        switch(this.type) {
+            case LONG: return this.getLong(id);
+            case INT: return this.getInt(id);
+            default: return this.getDouble(id);
+        }
+    }
+
+    // Note: generic setters register the ids of changed outputs so that dependents re-evaluate only them (typed setters do not register changes and they have to be registered manually)
+    // Note: methods are not safe - they do not check the validity of arguments (ids, values etc.)
+
+    @Override
+    public void setValue(long id, Object value) {
+        this.write(id, value);
+        this.changedRanges.add(id, id + 1);
+    }
+
+    @Override
+    public void setValues(long start, int length, Object[] values) {
+        for(int k = 0; k < length; k++) {
+            this.write(start + k, values[k]);
+        }
+    }
+
+    private void write(long id, Object value) {
+        if(value == null) {
+            this.setNull(id, true);
+        }
+        else if(this.type == Type.DOUBLE) {
+            this.setDouble(id, ((Number)value).doubleValue());
+        }
+        else {
+            this.setLong(id, ((Number)value).longValue());
+        }
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        for(long i = range.start; i < range.end; i++) {
+            this.write(i, value);
+        }
+        this.setChanged(range);
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.setValue(this.idRange, value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+        this.setChanged();
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    // Make sure that segments for all ids till the specified (exclusive) id are allocated
+    protected void allocate(long end) {
+        if(end <= this.idRange.start) return;
+
+        long lastSegmentNo = (end - 1) >>> SEGMENT_BITS;
+        int requiredCount = (int)(lastSegmentNo - this.firstSegmentNo + 1);
+        if(requiredCount <= this.segmentCount) return;
+
+        // The directory grows geometrically (it is small and only references are copied)
+        if(this.firstSegment + requiredCount > this.segments.length) {
+            int newLength = Math.max(this.segments.length, INITIAL_SEGMENTS);
+            while(newLength < requiredCount * 2) newLength *= 2;
+            ByteBuffer[] newSegments = new ByteBuffer[newLength];
+            System.arraycopy(this.segments, this.firstSegment, newSegments, 0, this.segmentCount);
+            this.segments = newSegments;
+            this.firstSegment = 0;
+        }
+
+        for(int i = this.segmentCount; i < requiredCount; i++) {
+            this.segments[this.firstSegment + i] = this.allocateSegment(this.firstSegmentNo + i);
+        }
+        this.segmentCount = requiredCount;
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        this.allocate(this.idRange.end + count);
+
+        // Initialize (new ids are not changed outputs)
+        for(long i = this.idRange.end; i < this.idRange.end + count; i++) {
+            this.write(i, this.defaultValue);
+        }
+
+        this.idRange.end += count;
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        this.idRange.start += count;
+
+        this.gc();
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    // Forget all segments and start from the specified id without initializing any values
+    protected void clear(long start) {
+        this.segments = new ByteBuffer[INITIAL_SEGMENTS];
+        this.firstSegment = 0;
+        this.segmentCount = 0;
+        this.firstSegmentNo = start >>> SEGMENT_BITS;
+
+        this.idRange.start = start;
+        this.idRange.end = start;
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        // Initially no data but the ids start from what is specified in parameters
+        this.clear(start);
+
+        // Now the end will move and space will be added if necessary
+        this.add(end - start);
+
+        this.setValue(); // Set default values
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Release segments which store only removed ids (their memory is freed when the buffers are collected)
+        long startSegmentNo = this.idRange.start >>> SEGMENT_BITS;
+        int unused = (int)Math.min(startSegmentNo - this.firstSegmentNo, this.segmentCount - 1); // Retain at least one segment for appending
+        if(unused <= 0) return;
+
+        Arrays.fill(this.segments, this.firstSegment, this.firstSegment + unused, null);
+        this.firstSegment += unused;
+        this.segmentCount -= unused;
+        this.firstSegmentNo += unused;
+    }
+
+    private int compare(long id, Object value) {
+        if(this.type == Type.DOUBLE) {
+            return Double.compare(this.getDouble(id), ((Number)value).doubleValue());
+        }
+        else {
+            return Long.compare(this.getLong(id), ((Number)value).longValue());
+        }
+    }
+
+    // Return id of the found value or (-(insertion id) - 1) if not found
+    @Override
+    public long findSorted(Object value) {
+
+        // The data is supposed to be sorted (for example, range table or time stamps)
+        long low = this.idRange.start;
+        long high = this.idRange.end - 1;
+
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = this.compare(mid, value);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid; // Found
+        }
+
+        return -(low + 1); // Not found
+    }
+
+    @Override
+    public long findSortedFromStart(Object value) { // Find insertion index with the value strictly less than the specified value
+
+        // Start from the last/old/smallest ids and move in the loop until a greater or equal value is found
+        long end = this.idRange.end;
+        for(long i = this.idRange.start; i < end; i++) {
+            if(this.isNull(i)) continue;
+            if(this.compare(i, value) < 0) { // It is still small
+                continue;
+            }
+            end = i;
+            break;
+        }
+
+        return end;
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    private long resetChangedAt; // Time of reset changes
+    private long changedAt; // Time of latest change
+
+    ChangedRanges changedRanges = new ChangedRanges(); // Ids with changed outputs
+
+    @Override
+    public boolean isChanged() {
+        return this.changedAt > this.resetChangedAt || !this.changedRanges.isEmpty();
+    }
+
+    @Override
+    public void setChanged() {
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public void setChanged(Range range) {
+        this.changedRanges.add(range.start, range.end);
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        if(this.changedAt > this.resetChangedAt) return Arrays.asList(this.getIdRange()); // All outputs
+        return this.changedRanges.get(this.getIdRange());
+    }
+
+    @Override
+    public void resetChanged() {
+        this.resetChangedAt = this.changedAt;
+        this.changedRanges.clear();
+    }
+
+    @Override
+    public long getChangedAt() { return this.changedAt; }
+
+    //
+    // Creation
+    //
+
+    // Descendants which initialize data in another way
+    protected DirectColumnData(Type type) {
+        this.id = UUID.randomUUID();
+        this.type = type;
+    }
+
+    public DirectColumnData(Type type, long start, long end) {
+        this(type);
+
+        this.reset(start, end);
+
+        this.setChanged();
+        this.resetChanged();
+    }
+}
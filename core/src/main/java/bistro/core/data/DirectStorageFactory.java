@@ -0,0 +1,44 @@
+package bistro.core.data;
+
+import bistro.core.Column;
+import bistro.core.ColumnData;
+import bistro.core.Table;
+
+/**
+ * Storage factory which puts numeric columns and links (ids) outside of the Java heap.
+ * Other columns are created by the default factory.
+ */
+public class DirectStorageFactory extends StorageFactoryImpl {
+
+    // Which off-heap type is used for the column or null if the column cannot be stored off-heap
+    protected DirectColumnData.Type getType(Column column) {
+        Table output = column.getOutput();
+
+        if(output == null) {
+            return null;
+        }
+        else if(!output.isPrimitive()) { // Link columns store ids
+            return DirectColumnData.Type.LONG;
+        }
+        else if(output.getName().equalsIgnoreCase("Double")) {
+            return DirectColumnData.Type.DOUBLE;
+        }
+        else if(output.getName().equalsIgnoreCase("Integer")) {
+            return DirectColumnData.Type.INT;
+        }
+        else if(output.getName().equalsIgnoreCase("Long")) {
+            return DirectColumnData.Type.LONG;
+        }
+
+        return null;
+    }
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        DirectColumnData.Type type = this.getType(column);
+        if(type == null) {
+            return super.createColumnData(column, start, end);
+        }
+        return new DirectColumnData(type, start, end);
+    }
+}
@@ -0,0 +1,79 @@
+package bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing output values in an array of primitive doubles.
+ * Values are boxed as Double only if they are accessed via the generic methods.
+ */
+public class DoubleColumnData extends PrimitiveColumnData {
+
+    private double[] values = new double[0];
+
+    //
+    // Typed access (no boxing)
+    //
+
+    // Value of a null output is undefined so use isNull() if nulls are possible
+    public double getDouble(long id) { return this.values[id2offset(id)]; }
+
+    public void setDouble(long id, double value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.setNullAt(offset, false);
+    }
+
+    // Copy values of consecutive ids to the array (values of null outputs are undefined)
+    public void getDoubles(long start, int length, double[] values) {
+        System.arraycopy(this.values, id2offset(start), values, 0, length);
+    }
+
+    public void setDoubles(long start, int length, double[] values) {
+        int offset = id2offset(start);
+        System.arraycopy(values, 0, this.values, offset, length);
+        this.setNulls(offset, offset + length, false);
+    }
+
+    //
+    // Primitive array management
+    //
+
+    @Override
+    protected void resize(int capacity) {
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(this.values, from, this.values, to, length);
+    }
+
+    @Override
+    protected Object read(int offset) {
+        return this.values[offset];
+    }
+
+    @Override
+    protected void write(int offset, Object value) {
+        this.values[offset] = ((Number)value).doubleValue();
+    }
+
+    @Override
+    protected void write(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, ((Number)value).doubleValue());
+    }
+
+    @Override
+    protected int compare(int offset, Object value) {
+        return Double.compare(this.values[offset], ((Number)value).doubleValue());
+    }
+
+    //
+    // Creation
+    //
+
+    public DoubleColumnData(long start, long end) {
+        super();
+        this.init(start, end);
+    }
+}
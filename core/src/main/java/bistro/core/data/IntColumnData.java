@@ -0,0 +1,68 @@
+package bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing output values in an array of primitive ints.
+ * Values are boxed as Integer only if they are accessed via the generic methods.
+ */
+public class IntColumnData extends PrimitiveColumnData {
+
+    private int[] values = new int[0];
+
+    //
+    // Typed access (no boxing)
+    //
+
+    // Value of a null output is undefined so use isNull() if nulls are possible
+    public int getInt(long id) { return this.values[id2offset(id)]; }
+
+    public void setInt(long id, int value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.setNullAt(offset, false);
+    }
+
+    //
+    // Primitive array management
+    //
+
+    @Override
+    protected void resize(int capacity) {
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(this.values, from, this.values, to, length);
+    }
+
+    @Override
+    protected Object read(int offset) {
+        return this.values[offset];
+    }
+
+    @Override
+    protected void write(int offset, Object value) {
+        this.values[offset] = ((Number)value).intValue();
+    }
+
+    @Override
+    protected void write(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, ((Number)value).intValue());
+    }
+
+    @Override
+    protected int compare(int offset, Object value) {
+        return Integer.compare(this.values[offset], ((Number)value).intValue());
+    }
+
+    //
+    // Creation
+    //
+
+    public IntColumnData(long start, long end) {
+        super();
+        this.init(start, end);
+    }
+}
@@ -0,0 +1,74 @@
+package bistro.core.data;
+
+import java.util.Arrays;
+
+/**
+ * Column data storing output values in an array of primitive longs.
+ * Values are boxed as Long only if they are accessed via the generic methods.
+ */
+public class LongColumnData extends PrimitiveColumnData {
+
+    private long[] values = new long[0];
+
+    //
+    // Typed access (no boxing)
+    //
+
+    // Value of a null output is undefined so use isNull() if nulls are possible
+    public long getLong(long id) { return this.values[id2offset(id)]; }
+
+    public void setLong(long id, long value) {
+        int offset = id2offset(id);
+        this.values[offset] = value;
+        this.setNullAt(offset, false);
+    }
+
+    public void setLongs(long start, int length, long[] values) {
+        int offset = id2offset(start);
+        System.arraycopy(values, 0, this.values, offset, length);
+        this.setNulls(offset, offset + length, false);
+    }
+
+    //
+    // Primitive array management
+    //
+
+    @Override
+    protected void resize(int capacity) {
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(this.values, from, this.values, to, length);
+    }
+
+    @Override
+    protected Object read(int offset) {
+        return this.values[offset];
+    }
+
+    @Override
+    protected void write(int offset, Object value) {
+        this.values[offset] = ((Number)value).longValue();
+    }
+
+    @Override
+    protected void write(int from, int to, Object value) {
+        Arrays.fill(this.values, from, to, ((Number)value).longValue());
+    }
+
+    @Override
+    protected int compare(int offset, Object value) {
+        return Long.compare(this.values[offset], ((Number)value).longValue());
+    }
+
+    //
+    // Creation
+    //
+
+    public LongColumnData(long start, long end) {
+        super();
+        this.init(start, end);
+    }
+}
@@ -0,0 +1,308 @@
+package bistro.core.data;
+
+import bistro.core.Column;
+import bistro.core.ColumnData;
+import bistro.core.Range;
+import bistro.core.Table;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index for one numeric (long or int) key column which maps keys to ids without boxing.
+ * It is an open-addressing hash table with linear probing stored in two primitive arrays (keys and ids).
+ * Deleted entries are not marked but the following entries of the probe sequence are shifted back so that lookups never skip empty cells.
+ * Keys are equal if their values are equal (as in the generic index), that is, a key has to have the class of the column values (Long or Integer).
+ * Generic column data might also store values of other classes and they are indexed by the generic entries.
+ */
+class LongTableIndex extends TableIndex {
+
+    private static int INITIAL_CAPACITY = 64;
+    private static long EMPTY = -1; // Id of an empty cell (ids are never negative)
+
+    private long[] keys;
+    private long[] ids;
+    private int[] counts; // Number of records with the key
+    private int mask;
+    private int size = 0;
+
+    private long nullId = EMPTY; // Records with null keys are not stored in the table
+    private int nullCount = 0;
+
+    private Class<?> keyClass; // Class of the values which are stored in the table
+    public Class<?> getKeyClass() {
+        return this.keyClass;
+    }
+
+    // Class of the key values (Long or Integer) if the column can be indexed by this index or null otherwise
+    // Generic data can store any values so the declared type of the column is used
+    public static Class<?> getKeyClass(Column column) {
+        ColumnData data = column.getData();
+        if(data instanceof LongColumnData) return Long.class;
+        if(data instanceof IntColumnData) return Integer.class;
+        if(data instanceof DirectColumnData) {
+            switch(((DirectColumnData)data).getType()) {
+                case LONG: return Long.class;
+                case INT: return Integer.class;
+                default: return null;
+            }
+        }
+        if(data instanceof PrimitiveColumnData) return null; // Other primitive types
+
+        Table output = column.getOutput();
+        if(output == null) return null;
+        if(!output.isPrimitive()) return Long.class; // Links store ids
+        if(output.getName().equalsIgnoreCase("Long")) return Long.class;
+        if(output.getName().equalsIgnoreCase("Integer")) return Integer.class;
+        return null;
+    }
+
+    //
+    // Access to the key column data without boxing
+    //
+
+    private static int NULL = 0;
+    private static int KEY = 1;
+    private static int OTHER = 2; // Value of another class stored in generic data
+
+    private static boolean isTyped(ColumnData data) {
+        return data instanceof PrimitiveColumnData || data instanceof DirectColumnData;
+    }
+
+    private int kind(ColumnData data, long id) {
+        if(data instanceof PrimitiveColumnData) return ((PrimitiveColumnData)data).isNull(id) ? NULL : KEY;
+        if(data instanceof DirectColumnData) return ((DirectColumnData)data).isNull(id) ? NULL : KEY;
+        Object value = data.getValue(id);
+        if(value == null) return NULL;
+        return value.getClass() == this.keyClass ? KEY : OTHER;
+    }
+
+    private static long getKey(ColumnData data, long id) {
+        if(data instanceof LongColumnData) return ((LongColumnData)data).getLong(id);
+        if(data instanceof IntColumnData) return ((IntColumnData)data).getInt(id);
+        if(data instanceof DirectColumnData) return ((DirectColumnData)data).getLong(id);
+        return ((Number)data.getValue(id)).longValue();
+    }
+
+    // Whether the value can be compared with the keys of the table
+    private boolean isKey(Object value) {
+        return value.getClass() == this.keyClass;
+    }
+
+    private Object box(long key) {
+        if(this.keyClass == Integer.class) return (int)key;
+        return key;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    //
+    // Hash table
+    //
+
+    // Cell with this key or the empty cell where it has to be inserted
+    private int slot(long key) {
+        int i = hash(key) & this.mask;
+        while(this.ids[i] != EMPTY && this.keys[i] != key) {
+            i = (i + 1) & this.mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        long[] oldIds = this.ids;
+        int[] oldCounts = this.counts;
+
+        this.allocate(oldKeys.length * 2);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldIds[i] == EMPTY) continue;
+            int j = this.slot(oldKeys[i]);
+            this.keys[j] = oldKeys[i];
+            this.ids[j] = oldIds[i];
+            this.counts[j] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.ids = new long[capacity];
+        this.counts = new int[capacity];
+        Arrays.fill(this.ids, EMPTY);
+        this.mask = capacity - 1;
+    }
+
+    private void putKey(long key, long id) {
+        if((this.size + 1) * 2 > this.keys.length) this.grow(); // Load factor at most 0.5
+
+        int i = this.slot(key);
+        if(this.ids[i] != EMPTY) { // Already exists
+            this.counts[i]++;
+            return;
+        }
+        this.keys[i] = key;
+        this.ids[i] = id;
+        this.counts[i] = 1;
+        this.size++;
+    }
+
+    private void deleteKey(long key, long id) { // Delete the record (or the whole entry if the id is negative)
+        int i = this.slot(key);
+        if(this.ids[i] == EMPTY) return;
+        if(id >= 0 && this.counts[i] > 1) { // Other records with this key exist but we do not know which
+            this.counts[i]--;
+            if(this.ids[i] == id) this.ids[i] = UNKNOWN;
+            return;
+        }
+        if(id >= 0 && this.ids[i] != id && this.ids[i] != UNKNOWN) return;
+
+        // Shift back the following entries of the probe sequence which would not be found otherwise
+        int j = i;
+        while(true) {
+            j = (j + 1) & this.mask;
+            if(this.ids[j] == EMPTY) break;
+            int home = hash(this.keys[j]) & this.mask;
+            // Entry j can be moved to i only if its home cell is not in the (cyclic) interval (i, j]
+            if(i <= j ? (i < home && home <= j) : (i < home || home <= j)) continue;
+            this.keys[i] = this.keys[j];
+            this.ids[i] = this.ids[j];
+            this.counts[i] = this.counts[j];
+            i = j;
+        }
+        this.ids[i] = EMPTY;
+        this.size--;
+    }
+
+    private long lookupKey(long key) {
+        return this.ids[this.slot(key)];
+    }
+
+    //
+    // Entries
+    //
+
+    @Override
+    protected void put(long id) {
+        ColumnData data = this.columns.get(0).getData();
+        int kind = this.kind(data, id);
+        if(kind == KEY) {
+            this.putKey(getKey(data, id), id);
+        }
+        else if(kind == NULL) {
+            if(this.nullCount++ == 0) this.nullId = id;
+        }
+        else {
+            super.put(id);
+        }
+    }
+
+    @Override
+    protected void delete(long id) {
+        ColumnData data = this.columns.get(0).getData();
+        int kind = this.kind(data, id);
+        if(kind == KEY) {
+            this.deleteKey(getKey(data, id), id);
+        }
+        else if(kind == NULL) {
+            if(this.nullCount == 0) return;
+            this.nullCount--;
+            if(this.nullCount == 0) this.nullId = EMPTY;
+            else if(this.nullId == id) this.nullId = UNKNOWN;
+        }
+        else {
+            super.delete(id);
+        }
+    }
+
+    @Override
+    protected long lookup(List<Object> values) {
+        Object value = values.get(0);
+        if(value == null) return this.nullId;
+        if(!this.isKey(value)) return super.lookup(values);
+        return this.lookupKey(((Number)value).longValue());
+    }
+
+    @Override
+    protected void relink(List<Object> values, long id) {
+        Object value = values.get(0);
+        if(value == null) {
+            this.nullId = id;
+            if(id < 0) this.nullCount = 0;
+        }
+        else if(!this.isKey(value)) {
+            super.relink(values, id);
+        }
+        else if(id < 0) {
+            this.deleteKey(((Number)value).longValue(), EMPTY);
+        }
+        else {
+            this.ids[this.slot(((Number)value).longValue())] = id;
+        }
+    }
+
+    @Override
+    protected void reindex(long id) {
+        ColumnData data = this.columns.get(0).getData();
+        int kind = this.kind(data, id);
+        if(kind == KEY) {
+            long key = getKey(data, id);
+            if(this.lookupKey(key) != id) this.putKey(key, id);
+        }
+        else if(kind == NULL) {
+            if(this.nullId != id) this.put(id);
+        }
+        else {
+            super.reindex(id);
+        }
+    }
+
+    @Override
+    protected void clearEntries() {
+        super.clearEntries();
+        this.allocate(INITIAL_CAPACITY);
+        this.size = 0;
+        this.nullId = EMPTY;
+        this.nullCount = 0;
+    }
+
+    @Override
+    protected boolean matches(long id, List<Object> values) {
+        ColumnData data = this.columns.get(0).getData();
+        if(!isTyped(data)) return super.matches(id, values);
+
+        Object value = values.get(0);
+        int kind = this.kind(data, id);
+        if(value == null) return kind == NULL;
+        if(!this.isKey(value) || kind == NULL) return false;
+        return getKey(data, id) == ((Number)value).longValue();
+    }
+
+    //
+    // Batch search
+    //
+
+    // Find ids for the specified (non-null) keys of the key class and store them in the output array (-1 if not found)
+    public void find(long[] keys, int length, long[] ids, Range idRange) {
+        this.update(idRange);
+
+        ColumnData data = this.columns.get(0).getData();
+        for(int k = 0; k < length; k++) {
+            long key = keys[k];
+            long id = this.lookupKey(key);
+            if(id != EMPTY && (!idRange.isIn(id) || this.kind(data, id) != KEY || getKey(data, id) != key)) { // Stale entry
+                id = this.find(Collections.singletonList(this.box(key)), idRange);
+            }
+            ids[k] = id;
+        }
+    }
+
+    public LongTableIndex(Column column, Class<?> keyClass) {
+        super(Collections.singletonList(column));
+        this.keyClass = keyClass;
+        this.allocate(INITIAL_CAPACITY);
+    }
+}
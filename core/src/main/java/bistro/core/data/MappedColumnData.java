@@ -0,0 +1,251 @@
+package bistro.core.data;
+
+import bistro.core.BistroErrorCode;
+import bistro.core.BistroException;
+import bistro.core.PersistentData;
+import bistro.core.Range;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Persistent column data stored in a memory-mapped file.
+ * The file starts from a header with the column type, the range of stored ids and the state of changes which is followed by segments with the layout of direct column data.
+ * Segments are mapped when they are needed so appending records extends the file and the mapping by one large segment at a time.
+ * Segments which store only removed ids are cut off when the file is closed.
+ * If the file already exists then the data is reopened with the ids, values and changes stored in it.
+ */
+public class MappedColumnData extends DirectColumnData implements PersistentData {
+
+    private static int MAGIC = 0x42435344; // Identifies column files
+    private static int HEADER_SIZE = 64;
+
+    private static int EVALUATED = 1; // Outputs are evaluated for the current definition
+    private static int OPEN = 2; // The file has not been closed so the changes are not known (e.g., after a crash)
+
+    private File file;
+    public File getFile() {
+        return this.file;
+    }
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+
+    private long baseSegmentNo; // Number of the first segment stored in the file
+
+    @Override
+    protected ByteBuffer allocateSegment(long segmentNo) {
+        int segmentBytes = this.getSegmentBytes();
+        try {
+            return this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (segmentNo - this.baseSegmentNo) * segmentBytes, segmentBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot map column file segment.", e);
+        }
+    }
+
+    //
+    // Header
+    //
+
+    private boolean readHeader() {
+        if(this.header.getInt(0) != MAGIC) return false; // New file
+        if(this.header.getInt(4) != this.type.ordinal()) {
+            throw new BistroException(BistroErrorCode.ELEMENT_CREATION_ERROR, "Wrong column file.", "The column file stores values of another type: " + this.file.getPath());
+        }
+
+        long start = this.header.getLong(8);
+        long end = this.header.getLong(16);
+        int flags = this.header.getInt(24);
+        this.baseSegmentNo = this.header.getLong(32);
+
+        // Map the existing segments without initializing their values
+        this.clear(start);
+        this.allocate(end);
+        this.idRange.end = end;
+
+        // Changes which have not been processed by dependents before closing
+        this.setChanged();
+        this.resetChanged();
+        if((flags & OPEN) != 0) {
+            this.setChanged(); // Not known
+        }
+        else {
+            this.setChanged(new Range(this.header.getLong(40), this.header.getLong(48)));
+        }
+
+        this.evaluated = (flags & EVALUATED) != 0;
+        this.restored = this.evaluated;
+
+        return true;
+    }
+
+    private void writeHeader() {
+        if(this.header == null) return; // Not opened yet
+        this.header.putInt(0, MAGIC);
+        this.header.putInt(4, this.type.ordinal());
+        this.header.putLong(8, this.idRange.start);
+        this.header.putLong(16, this.idRange.end);
+        this.header.putInt(24, (this.evaluated ? EVALUATED : 0) | (this.channel.isOpen() ? OPEN : 0));
+        this.header.putLong(32, this.baseSegmentNo);
+    }
+
+    // Changes are stored as one range which covers all changed ids
+    private void writeChanges() {
+        long start = 0;
+        long end = 0;
+        List<Range> ranges = this.getChangedRanges();
+        if(!ranges.isEmpty()) {
+            start = ranges.get(0).start;
+            end = ranges.get(ranges.size() - 1).end;
+        }
+        this.header.putLong(40, start);
+        this.header.putLong(48, end);
+    }
+
+    //
+    // State of outputs
+    //
+
+    private boolean evaluated;
+    private boolean restored;
+
+    @Override
+    public boolean isRestored() {
+        return this.restored;
+    }
+
+    @Override
+    public void setEvaluated(boolean evaluated) {
+        this.restored = false;
+        if(this.evaluated == evaluated) return;
+        this.evaluated = evaluated;
+        this.writeHeader();
+    }
+
+    //
+    // Input range (changes are written to the header)
+    //
+
+    @Override
+    public void add(long count) {
+        super.add(count);
+        this.writeHeader();
+    }
+
+    @Override
+    public void remove(long count) {
+        super.remove(count);
+        this.writeHeader();
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        // Existing segments are not needed anymore
+        this.baseSegmentNo = start >>> SEGMENT_BITS;
+        try {
+            this.channel.truncate(HEADER_SIZE);
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot truncate column file.", e);
+        }
+
+        super.reset(start, end);
+        this.writeHeader();
+    }
+
+    //
+    // File
+    //
+
+    // Write all changes to the storage device
+    public void flush() {
+        this.header.force();
+        try {
+            this.channel.force(false);
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot write column file.", e);
+        }
+    }
+
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if(!this.channel.isOpen()) return;
+        try {
+            this.compact();
+            this.channel.close();
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot close column file.", e);
+        }
+        this.writeChanges();
+        this.writeHeader(); // Changes are known now
+        this.header.force();
+    }
+
+    @Override
+    public void delete() {
+        this.close();
+        this.file.delete();
+    }
+
+    // Move the segments with valid ids to the beginning of the file and cut off the segments which store only removed ids
+    private void compact() throws IOException {
+        long segmentBytes = this.getSegmentBytes();
+        long firstSegmentNo = this.idRange.start >>> SEGMENT_BITS;
+        long count = this.idRange.getLength() == 0 ? 0 : ((this.idRange.end - 1) >>> SEGMENT_BITS) - firstSegmentNo + 1;
+
+        if(firstSegmentNo > this.baseSegmentNo) {
+            this.flush(); // Values written via mapped segments are read by the channel
+            long from = HEADER_SIZE + (firstSegmentNo - this.baseSegmentNo) * segmentBytes;
+            ByteBuffer buffer = ByteBuffer.allocate((int)segmentBytes);
+            for(long i = 0; i < count; i++) {
+                buffer.clear();
+                while(buffer.hasRemaining() && this.channel.read(buffer, from + i * segmentBytes + buffer.position()) >= 0);
+                buffer.flip();
+                while(buffer.hasRemaining()) this.channel.write(buffer, HEADER_SIZE + i * segmentBytes + buffer.position());
+            }
+            this.baseSegmentNo = firstSegmentNo;
+        }
+
+        this.channel.truncate(HEADER_SIZE + count * segmentBytes);
+        this.channel.force(false);
+    }
+
+    //
+    // Creation
+    //
+
+    // Open an existing file or create a new file for the specified ids
+    public MappedColumnData(File file, Type type, long start, long end) {
+        super(type);
+
+        this.file = file;
+        try {
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            this.header.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot open column file.", e);
+        }
+
+        if(!this.readHeader()) {
+            this.reset(start, end);
+            this.setChanged();
+            this.resetChanged();
+        }
+        this.writeHeader(); // Open
+    }
+}
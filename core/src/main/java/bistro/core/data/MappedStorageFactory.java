@@ -0,0 +1,48 @@
+package bistro.core.data;
+
+import bistro.core.Column;
+import bistro.core.ColumnData;
+import bistro.core.Table;
+import bistro.core.TableData;
+
+import java.io.File;
+
+/**
+ * Storage factory which persists tables and numeric columns (including links) in memory-mapped files of the specified directory.
+ * If the files already exist (e.g., after restart) then tables and columns are reopened with their previous data.
+ * Other columns are created by the default factory and are not persistent.
+ * Outputs of derived columns are retained if the same definitions are set again after reopening (see PersistentData).
+ * The files are released by closing the schema.
+ */
+public class MappedStorageFactory extends DirectStorageFactory {
+
+    private File directory;
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        DirectColumnData.Type type = this.getType(column);
+        if(type == null) {
+            return super.createColumnData(column, start, end);
+        }
+        File file = new File(this.directory, toFileName(column.getInput().getName()) + "." + toFileName(column.getName()) + ".col");
+        return new MappedColumnData(file, type, start, end);
+    }
+
+    @Override
+    public TableData createTableData(Table table) {
+        File file = new File(this.directory, toFileName(table.getName()) + ".tab");
+        return new MappedTableData(table, file);
+    }
+
+    public MappedStorageFactory(File directory) {
+        this.directory = directory;
+        this.directory.mkdirs();
+    }
+}
@@ -0,0 +1,175 @@
+package bistro.core.data;
+
+import bistro.core.BistroErrorCode;
+import bistro.core.BistroException;
+import bistro.core.PersistentData;
+import bistro.core.Range;
+import bistro.core.Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent table data. The added and removed ranges are stored in a memory-mapped file.
+ * If the file already exists then the table is reopened with the ids stored in it
+ * so that only records which were added or removed but not evaluated will be processed by the next evaluation.
+ */
+public class MappedTableData extends TableDataImpl implements PersistentData {
+
+    private static int MAGIC = 0x42545344; // Identifies table files
+    private static int HEADER_SIZE = 64;
+
+    private static int EVALUATED = 1; // Records are populated for the current definition
+
+    private File file;
+    public File getFile() {
+        return this.file;
+    }
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+
+    private boolean readHeader() {
+        if(this.header.getInt(0) != MAGIC) return false; // New file
+
+        this.addedRange = new Range(this.header.getLong(8), this.header.getLong(16));
+        this.removedRange = new Range(this.header.getLong(24), this.header.getLong(32));
+
+        this.evaluated = (this.header.getInt(40) & EVALUATED) != 0;
+        this.restored = this.evaluated;
+
+        return true;
+    }
+
+    private void writeHeader() {
+        if(this.header == null) return; // Not opened yet
+        this.header.putInt(0, MAGIC);
+        this.header.putLong(8, this.addedRange.start);
+        this.header.putLong(16, this.addedRange.end);
+        this.header.putLong(24, this.removedRange.start);
+        this.header.putLong(32, this.removedRange.end);
+        this.header.putInt(40, this.evaluated ? EVALUATED : 0);
+    }
+
+    //
+    // State of records
+    //
+
+    private boolean evaluated;
+    private boolean restored;
+
+    @Override
+    public boolean isRestored() {
+        return this.restored;
+    }
+
+    @Override
+    public void setEvaluated(boolean evaluated) {
+        this.restored = false;
+        if(this.evaluated == evaluated) return;
+        this.evaluated = evaluated;
+        this.writeHeader();
+    }
+
+    //
+    // Changes of ids are written to the header
+    //
+
+    @Override
+    public long add() {
+        long id = super.add();
+        this.writeHeader();
+        return id;
+    }
+
+    @Override
+    public Range add(long count) {
+        Range range = super.add(count);
+        this.writeHeader();
+        return range;
+    }
+
+    @Override
+    public long remove() {
+        long id = super.remove();
+        this.writeHeader();
+        return id;
+    }
+
+    @Override
+    public Range remove(long count) {
+        Range range = super.remove(count);
+        this.writeHeader();
+        return range;
+    }
+
+    @Override
+    public void removeAll() {
+        super.removeAll();
+        this.writeHeader();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        this.writeHeader();
+    }
+
+    @Override
+    public void resetChanged() {
+        super.resetChanged();
+        this.writeHeader();
+    }
+
+    //
+    // File
+    //
+
+    public void flush() {
+        this.header.force();
+    }
+
+    @Override
+    public void close() {
+        if(!this.channel.isOpen()) return;
+        this.flush();
+        try {
+            this.channel.close();
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot close table file.", e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        this.close();
+        this.file.delete();
+    }
+
+    //
+    // Creation
+    //
+
+    public MappedTableData(Table table, File file) {
+        super(table);
+
+        this.file = file;
+        try {
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            this.header.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch(IOException e) {
+            throw new BistroException(BistroErrorCode.CONNECTOR_ERROR, e.getMessage(), "Cannot open table file.", e);
+        }
+
+        if(!this.readHeader()) {
+            this.writeHeader();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package bistro.core.data;
+
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Base class for column data which stores output values in primitive arrays rather than in an array of objects.
+ * Null values are represented by a separate bitmap (a set bit means that the output is null).
+ * Descendants are responsible only for the concrete array type while the mapping from input ids to array offsets, growth and change tracking are implemented here.
+ */
+public abstract class PrimitiveColumnData implements ColumnData {
+
+    private final UUID id;
+    public UUID getId() {
+        return this.id;
+    }
+
+    //
+    // Data
+    //
+
+    protected Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    private static int INITIAL_SIZE = 64;
+
+    // Id stored in the first cell of the arrays. It is always a multiple of 64 so that one word of the null bitmap never covers ids from two different 64-blocks.
+    private long baseId = 0;
+
+    private int capacity = 0; // Allocated size of the arrays
+
+    private long[] nulls; // Bit is set if the value is null
+
+    protected int id2offset(long id) {
+        return (int) (id - this.baseId);
+    }
+    protected long offset2id(int offset) {
+        return this.baseId + offset;
+    }
+
+    protected boolean isNullAt(int offset) {
+        return (this.nulls[offset >>> 6] & (1L << offset)) != 0;
+    }
+    protected void setNullAt(int offset, boolean isNull) {
+        if(isNull) this.nulls[offset >>> 6] |= (1L << offset);
+        else this.nulls[offset >>> 6] &= ~(1L << offset);
+    }
+    protected void setNulls(int from, int to, boolean isNull) {
+        for(int i = from; i < to; i++) { // Could be done word by word but ranges are normally short
+            this.setNullAt(i, isNull);
+        }
+    }
+
+    //
+    // Primitive array management (implemented by descendants)
+    //
+
+    protected abstract void resize(int capacity); // Allocate new array of the specified size by retaining existing values
+    protected abstract void move(int from, int to, int length); // Shift values within the array
+    protected abstract Object read(int offset); // Read (boxed) value which is not null
+    protected abstract void write(int offset, Object value); // Write (unbox) value which is not null
+    protected abstract void write(int from, int to, Object value); // Write (unbox) value which is not null to a range of cells
+    protected abstract int compare(int offset, Object value); // Compare the stored (non-null) value with the specified value
+
+    //
+    // Output values
+    //
+
+    public boolean isNull(long id) { return this.isNullAt(id2offset(id)); }
+    public void setNull(long id) { this.setNullAt(id2offset(id), true); } // Typed setter (changes are not registered)
+
+    @Override
+    public Object getValue(long id) {
+        int offset = id2offset(id);
+        if(this.isNullAt(offset)) return null;
+        return this.read(offset);
+    }
+
+    // Note: generic setters register the ids of changed outputs so that dependents re-evaluate only them (typed setters do not register changes and they have to be registered manually)
+    // Note: methods are not safe - they do not check the validity of arguments (ids, values etc.)
+
+    @Override
+    public void setValue(long id, Object value) {
+        int offset = id2offset(id);
+        if(value == null) {
+            this.setNullAt(offset, true);
+        }
+        else {
+            this.write(offset, value);
+            this.setNullAt(offset, false);
+        }
+        this.changedRanges.add(id, id + 1);
+    }
+
+    @Override
+    public void setValues(long start, int length, Object[] values) {
+        int from = id2offset(start);
+        for(int k = 0; k < length; k++) {
+            if(values[k] == null) {
+                this.setNullAt(from + k, true);
+            }
+            else {
+                this.write(from + k, values[k]);
+                this.setNullAt(from + k, false);
+            }
+        }
+    }
+
+    protected void setValue(int from, int to, Object value) {
+        if(from >= to) return;
+        if(value != null) {
+            this.write(from, to, value);
+        }
+        this.setNulls(from, to, value == null);
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        this.setValue(this.id2offset(range.start), this.id2offset(range.end), value);
+        this.setChanged(range);
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.setValue(this.id2offset(this.idRange.start), this.id2offset(this.idRange.end), value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+        this.setChanged();
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        // Check if not enough space and allocate more if necessary
+        long requiredSize = this.id2offset(this.idRange.end) + count;
+        if(requiredSize > this.capacity) { // More space is needed
+            int newCapacity = Math.max(this.capacity, INITIAL_SIZE);
+            while(newCapacity < requiredSize) newCapacity *= 2; // Geometric growth so that appending one by one is amortized constant time
+            this.resize(newCapacity);
+            this.nulls = Arrays.copyOf(this.nulls, (newCapacity + 63) >>> 6);
+            this.capacity = newCapacity;
+        }
+
+        // Initialize
+        int from = this.id2offset(this.idRange.end);
+        this.setValue(from, from + (int)count, this.defaultValue);
+
+        this.idRange.end += count;
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        this.idRange.start += count;
+
+        this.gc();
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        // Allocate memory
+        this.capacity = 0;
+        this.nulls = new long[0];
+        this.resize(0);
+
+        // Initially no data but the ids start from what is specified in parameters
+        this.baseId = start & ~63L;
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        // Now the end will move and space will be added if necessary
+        this.add(end - start);
+
+        this.setValue(); // Set default values
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Garbage collection. Shift values to the beginning if more than a half of the array is not used any more
+        int unused = this.id2offset(this.idRange.start) & ~63; // Shift by whole bitmap words
+        if(unused == 0 || unused < this.capacity / 2) return;
+
+        int length = (int)(this.idRange.end - this.baseId) - unused; // Including some removed values at the start
+        this.move(unused, 0, length);
+        System.arraycopy(this.nulls, unused >>> 6, this.nulls, 0, (length + 63) >>> 6);
+        this.baseId += unused;
+    }
+
+    // Return id of the found value or (-(insertion id) - 1) if not found
+    @Override
+    public long findSorted(Object value) {
+
+        // The data is supposed to be sorted (for example, range table or time stamps)
+        int low = this.id2offset(this.idRange.start);
+        int high = this.id2offset(this.idRange.end) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = this.compare(mid, value);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return offset2id(mid); // Found
+        }
+
+        return -(offset2id(low) + 1); // Not found
+    }
+
+    @Override
+    public long findSortedFromStart(Object value) { // Find insertion index with the value strictly less than the specified value
+
+        // Start from the last/old/smallest ids and move in the loop until a greater or equal value is found
+        int start = this.id2offset(this.idRange.start);
+        int end = this.id2offset(this.idRange.end);
+        for(int i = start; i < end; i++) {
+            if(this.isNullAt(i)) continue;
+            if(this.compare(i, value) < 0) { // It is still small
+                continue;
+            }
+            end = i;
+            break;
+        }
+
+        return offset2id(end);
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    private long resetChangedAt; // Time of reset changes
+    private long changedAt; // Time of latest change
+
+    ChangedRanges changedRanges = new ChangedRanges(); // Ids with changed outputs
+
+    @Override
+    public boolean isChanged() {
+        return this.changedAt > this.resetChangedAt || !this.changedRanges.isEmpty();
+    }
+
+    @Override
+    public void setChanged() {
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public void setChanged(Range range) {
+        this.changedRanges.add(range.start, range.end);
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        if(this.changedAt > this.resetChangedAt) return Arrays.asList(this.getIdRange()); // All outputs
+        return this.changedRanges.get(this.getIdRange());
+    }
+
+    @Override
+    public void resetChanged() {
+        this.resetChangedAt = this.changedAt;
+        this.changedRanges.clear();
+    }
+
+    @Override
+    public long getChangedAt() { return this.changedAt; }
+
+    //
+    // Creation
+    //
+
+    // Descendants have to call init() after their own fields have been initialized
+    protected PrimitiveColumnData() {
+        this.id = UUID.randomUUID();
+    }
+
+    protected void init(long start, long end) {
+        this.reset(start, end);
+
+        this.setChanged();
+        this.resetChanged();
+    }
+}
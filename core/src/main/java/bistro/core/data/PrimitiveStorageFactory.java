@@ -0,0 +1,39 @@
+package bistro.core.data;
+
+import bistro.core.*;
+
+/**
+ * Storage factory which chooses column data depending on the declared output type of the column:
+ * primitive numeric types (Double, Integer, Long, Boolean) and links (non-primitive output tables) are stored in primitive arrays
+ * while all other values are stored as objects.
+ * Generic setters convert values to the type of the column, for example, an Integer is returned as a Double from a Double column
+ * and a Long is narrowed to int in an Integer column. Values which are not numbers cannot be stored in numeric columns.
+ */
+public class PrimitiveStorageFactory extends StorageFactoryImpl {
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        Table output = column.getOutput();
+
+        if(output == null) {
+            return new ColumnDataImpl(start, end);
+        }
+        else if(!output.isPrimitive()) { // Link columns store ids
+            return new LongColumnData(start, end);
+        }
+        else if(output.getName().equalsIgnoreCase("Double")) {
+            return new DoubleColumnData(start, end);
+        }
+        else if(output.getName().equalsIgnoreCase("Integer")) {
+            return new IntColumnData(start, end);
+        }
+        else if(output.getName().equalsIgnoreCase("Long")) {
+            return new LongColumnData(start, end);
+        }
+        else if(output.getName().equalsIgnoreCase("Boolean")) {
+            return new BooleanColumnData(start, end);
+        }
+
+        return new ColumnDataImpl(start, end);
+    }
+}
@@ -0,0 +1,273 @@
+package bistro.core.data;
+
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Column data for sliding-window (streaming) tables where new records are appended at the end and old records are removed at the start.
+ * Output values are stored in a circular buffer where each id has a fixed cell (id modulo capacity).
+ * Therefore, appending and removing records are constant time operations which neither allocate memory nor copy values.
+ * The buffer grows only if the number of stored ids exceeds its capacity so its capacity should be at least the maximum window size
+ * (including the records which have been removed from the table but are still needed by dependents during the next evaluation).
+ */
+public class RingColumnData implements ColumnData {
+
+    private final UUID id;
+    public UUID getId() {
+        return this.id;
+    }
+
+    //
+    // Data
+    //
+
+    private Range idRange = new Range(); // All valid input ids for which outputs are stored
+
+    private Object[] values; // Circular buffer. Its length is a power of two
+    private int mask; // Capacity - 1
+
+    public int getCapacity() {
+        return this.values.length;
+    }
+
+    private int id2offset(long id) {
+        return (int)id & this.mask;
+    }
+
+    private void fill(long start, long end, Object value) { // At most two contiguous pieces of the buffer
+        if(start >= end) return;
+        int from = this.id2offset(start);
+        int to = this.id2offset(end - 1) + 1;
+        if(from < to) {
+            Arrays.fill(this.values, from, to, value);
+        }
+        else {
+            Arrays.fill(this.values, from, this.values.length, value);
+            Arrays.fill(this.values, 0, to, value);
+        }
+    }
+
+    private void grow(long requiredSize) { // Rare operation which is needed only if the window is larger than the capacity
+        int newCapacity = this.values.length;
+        while(newCapacity < requiredSize) newCapacity *= 2;
+
+        Object[] newValues = new Object[newCapacity];
+        for(long i = this.idRange.start; i < this.idRange.end; i++) {
+            newValues[(int)i & (newCapacity - 1)] = this.getValue(i);
+        }
+
+        this.values = newValues;
+        this.mask = newCapacity - 1;
+    }
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) { return this.values[id2offset(id)]; }
+
+    // Note: generic setters register the ids of changed outputs so that dependents re-evaluate only them (typed setters do not register changes and they have to be registered manually)
+    // Note: methods are not safe - they do not check the validity of arguments (ids, values etc.)
+
+    @Override
+    public void setValue(long id, Object value) {
+        this.values[id2offset(id)] = value;
+        this.changedRanges.add(id, id + 1);
+    }
+
+    @Override
+    public void setValues(long start, int length, Object[] values) {
+        for(int k = 0; k < length; k++) {
+            this.values[id2offset(start + k)] = values[k];
+        }
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        this.fill(range.start, range.end, value);
+        this.setChanged(range);
+    }
+    @Override
+    public void setValue(Range range) { // Default value
+        this.setValue(range, this.defaultValue);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        this.fill(this.idRange.start, this.idRange.end, value);
+        this.setChanged();
+    }
+    @Override
+    public void setValue() { // Default value
+        this.setValue(this.defaultValue);
+        this.setChanged();
+    }
+
+    private Object defaultValue = null;
+    @Override
+    public Object getDefaultValue() { return this.defaultValue; }
+    @Override
+    public void setDefaultValue(Object value) {
+        this.defaultValue = value;
+        this.setChanged();
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+
+        long requiredSize = this.idRange.getLength() + count;
+        if(requiredSize > this.values.length) {
+            this.grow(requiredSize);
+        }
+
+        // Initialize (overwrite values of the oldest removed ids)
+        this.fill(this.idRange.end, this.idRange.end + count, this.defaultValue);
+
+        this.idRange.end += count;
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        this.idRange.start += count; // Their cells will be reused by new ids
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        // Initially no data but the ids start from what is specified in parameters
+        this.idRange.start = start;
+        this.idRange.end = start;
+
+        // Now the end will move and space will be added if necessary
+        this.add(end - start);
+
+        this.setValue(); // Set default values
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Nothing to do because cells of removed ids are reused
+    }
+
+    // Return id of the found value or (-(insertion id) - 1) if not found
+    @Override
+    @SuppressWarnings("unchecked")
+    public long findSorted(Object value) {
+
+        // The data is supposed to be sorted (for example, range table or time stamps)
+        long low = this.idRange.start;
+        long high = this.idRange.end - 1;
+
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = ((Comparable<Object>)this.getValue(mid)).compareTo(value);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid; // Found
+        }
+
+        return -(low + 1); // Not found
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public long findSortedFromStart(Object value) { // Find insertion index with the value strictly less than the specified value
+
+        // Start from the last/old/smallest ids and move in the loop until a greater or equal value is found
+        long end = this.idRange.end;
+        for(long i = this.idRange.start; i < end; i++) {
+            Object val = this.getValue(i);
+            if(val == null) continue;
+            if(((Comparable<Object>)val).compareTo(value) < 0) { // It is still small
+                continue;
+            }
+            end = i;
+            break;
+        }
+
+        return end;
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    private long resetChangedAt; // Time of reset changes
+    private long changedAt; // Time of latest change
+
+    ChangedRanges changedRanges = new ChangedRanges(); // Ids with changed outputs
+
+    @Override
+    public boolean isChanged() {
+        return this.changedAt > this.resetChangedAt || !this.changedRanges.isEmpty();
+    }
+
+    @Override
+    public void setChanged() {
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public void setChanged(Range range) {
+        this.changedRanges.add(range.start, range.end);
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        if(this.changedAt > this.resetChangedAt) return Arrays.asList(this.getIdRange()); // All outputs
+        return this.changedRanges.get(this.getIdRange());
+    }
+
+    @Override
+    public void resetChanged() {
+        this.resetChangedAt = this.changedAt;
+        this.changedRanges.clear();
+    }
+
+    @Override
+    public long getChangedAt() { return this.changedAt; }
+
+    //
+    // Creation
+    //
+
+    public RingColumnData(int capacity, long start, long end) {
+        this.id = UUID.randomUUID();
+
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1; // Round up to a power of two
+        this.values = new Object[size];
+        this.mask = size - 1;
+
+        this.reset(start, end);
+
+        this.setChanged();
+        this.resetChanged();
+    }
+}
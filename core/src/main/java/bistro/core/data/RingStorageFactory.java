@@ -0,0 +1,24 @@
+package bistro.core.data;
+
+import bistro.core.Column;
+import bistro.core.ColumnData;
+
+/**
+ * Storage factory for sliding-window tables. Columns store their outputs in circular buffers of the specified capacity.
+ */
+public class RingStorageFactory extends StorageFactoryImpl {
+
+    private int capacity; // Maximum expected number of records in the window
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        return new RingColumnData(this.capacity, start, end);
+    }
+
+    public RingStorageFactory(int capacity) {
+        this.capacity = capacity;
+    }
+}
@@ -0,0 +1,20 @@
+package bistro.core.data;
+
+import bistro.core.*;
+
+/**
+ * Default storage factory. All columns store their outputs as objects so that values are returned exactly as they were set
+ * independent of the declared output type of the column. Primitive storage can be chosen by using PrimitiveStorageFactory.
+ */
+public class StorageFactoryImpl implements StorageFactory {
+
+    @Override
+    public ColumnData createColumnData(Column column, long start, long end) {
+        return new ColumnDataImpl(start, end);
+    }
+
+    @Override
+    public TableData createTableData(Table table) {
+        return new TableDataImpl(table);
+    }
+}
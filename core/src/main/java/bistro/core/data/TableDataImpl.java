@@ -1,10 +1,13 @@
 package bistro.core.data;
 
 import bistro.core.Column;
+import bistro.core.Range;
 import bistro.core.Table;
 import bistro.core.TableData;
-import bistro.core.Range;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -37,21 +40,37 @@ public class TableDataImpl implements TableData {
 
     @Override
     public long remove() { // Remove oldest elements with smallest ids. The removed id is returned.
-        this.table.getColumns().forEach( x -> x.getData().remove() );
-        if(this.getLength() > 0) { this.removedRange.end++; this.changedAt = System.nanoTime(); }
+        if(this.getLength() > 0) { this.removedRange.end++; this.changedAt = System.nanoTime(); this.releaseUnused(); }
         return this.removedRange.end - 1; // Id of the removed record (this id is not valid anymore)
     }
 
     @Override
     public Range remove(long count) {
         long toRemove = Math.min(count, this.getLength());
-        if(toRemove > 0) { this.removedRange.end += toRemove; this.changedAt = System.nanoTime(); }
+        if(toRemove > 0) { this.removedRange.end += toRemove; this.changedAt = System.nanoTime(); this.releaseUnused(); }
         return new Range(this.removedRange.end - toRemove, this.removedRange.end);
     }
 
     @Override
     public void removeAll() {
-        if(this.getLength() > 0) { this.removedRange.end = this.addedRange.end; this.changedAt = System.nanoTime(); }
+        if(this.getLength() > 0) { this.removedRange.end = this.addedRange.end; this.changedAt = System.nanoTime(); this.releaseUnused(); }
+    }
+
+    // Release removed records immediately if they are not read by dependents (otherwise they are released when changes are reset)
+    protected void releaseUnused() {
+        if(this.table.isRemovedRead()) return;
+        this.release();
+    }
+
+    // Delete removed records from indexes and column data
+    protected void release() {
+        for(TableIndex index : this.indexes) {
+            index.release(this.removedRange.end);
+        }
+        for(Column column : this.table.getColumns()) {
+            long toRelease = this.removedRange.end - column.getData().getIdRange().start;
+            if(toRelease > 0) column.getData().remove(toRelease);
+        }
     }
 
     @Override
@@ -76,6 +95,11 @@ public class TableDataImpl implements TableData {
         this.removedRange.end = initialId;
         this.removedRange.start = initialId;
 
+        // Column data has to use the same ids
+        this.table.getColumns().forEach( x -> x.getData().reset(initialId, initialId) );
+
+        this.indexes.forEach( x -> x.clear() );
+
         this.changedAt = System.nanoTime();
     }
 
@@ -98,29 +122,96 @@ public class TableDataImpl implements TableData {
     }
     @Override
     public void setValues(long id, Map<String,Object> record) {
+        List<Column> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
         for (Map.Entry<String, Object> field : record.entrySet()) {
-            String name = field.getKey();
-            Column col = this.table.getColumn(name);
-            Object value = field.getValue();
-            col.getData().setValue(id, value);
+            columns.add(this.table.getColumn(field.getKey()));
+            values.add(field.getValue());
         }
+        this.setValues(id, columns, values);
     }
     @Override
     public void setValues(long id, List<Column> columns, List<Object> values) {
+        // Index entries of this record are replaced if its key changes
+        List<TableIndex> changedIndexes = new ArrayList<>();
+        for(TableIndex index : this.indexes) {
+            if(!index.isIndexed(columns)) continue;
+            index.remove(id);
+            changedIndexes.add(index);
+        }
+
         for (int i = 0; i < columns.size(); i++) {
             Column col = columns.get(i);
             Object value = values.get(i);
             col.getData().setValue(id, value);
         }
+
+        changedIndexes.forEach( x -> x.add(id) );
+    }
+
+    //
+    // Indexes
+    //
+
+    protected List<TableIndex> indexes = new ArrayList<>();
+
+    protected TableIndex getIndex(List<Column> columns) {
+        for(TableIndex index : this.indexes) {
+            if(index.getColumns().equals(columns)) return index;
+        }
+        return null;
+    }
+
+    @Override
+    public void createIndex(List<Column> columns) {
+        if(columns == null || columns.isEmpty()) return;
+
+        // One numeric key column is indexed without boxing (depending on the type of its values rather than on its storage)
+        Class<?> keyClass = columns.size() == 1 ? LongTableIndex.getKeyClass(columns.get(0)) : null;
+
+        TableIndex index = this.getIndex(columns);
+        if(index != null) {
+            if(this.getLongIndexClass(index) == keyClass) return; // Already exists
+            this.indexes.remove(index); // Column type has changed
+        }
+
+        this.indexes.add(keyClass != null ? new LongTableIndex(columns.get(0), keyClass) : new TableIndex(columns));
+    }
+
+    private Class<?> getLongIndexClass(TableIndex index) {
+        return index instanceof LongTableIndex ? ((LongTableIndex)index).getKeyClass() : null;
+    }
+
+    @Override
+    public void createIndex(Column... columns) {
+        this.createIndex(Arrays.asList(columns));
+    }
+
+    @Override
+    public Class<?> getLongIndexClass(Column column) {
+        return this.getLongIndexClass(this.getIndex(Collections.singletonList(column)));
+    }
+
+    @Override
+    public boolean findValues(long[] keys, int length, Column column, long[] ids) {
+        TableIndex tableIndex = this.getIndex(Collections.singletonList(column));
+        if(!(tableIndex instanceof LongTableIndex)) return false;
+
+        ((LongTableIndex)tableIndex).find(keys, length, ids, this.getIdRange());
+        return true;
     }
 
     @Override
     public long findValues(List<Object> values, List<Column> columns) {
 
+        TableIndex tableIndex = this.getIndex(columns);
+        if(tableIndex != null) { // Hash lookup instead of scan
+            return tableIndex.find(values, this.getIdRange());
+        }
+
         Range searchRange = this.getIdRange();
         long index = -1;
         for(long i=searchRange.start; i<searchRange.end; i++) { // Scan all records and compare
-            // OPTIMIZATION: We could create or use an index and then binary search
 
             boolean found = true;
             for(int j=0; j<columns.size(); j++) {
@@ -183,6 +274,7 @@ public class TableDataImpl implements TableData {
     //
 
     protected long changedAt; // Time of latest change
+    protected long resetChangedAt; // Time of reset changes
     @Override
     public long getChangedAt() {
         return this.changedAt;
@@ -197,13 +289,18 @@ public class TableDataImpl implements TableData {
     public boolean isChanged() { // Changes in a table are made by adding and removing records
         if(this.addedRange.getLength() != 0) return true;
         if(this.removedRange.getLength() != 0) return true;
+        if(this.changedAt > this.resetChangedAt) return true; // For example, all records have been reset
         return false;
     }
 
     @Override
     public void resetChanged() { // Forget about the change status/scope/delta without changing the valid data currently in the tables
+        this.resetChangedAt = this.changedAt;
         this.addedRange.start = this.addedRange.end;
         this.removedRange.start = this.removedRange.end;
+
+        // Removed records are not needed by dependents anymore so now they can be removed also from indexes and column data
+        this.release();
     }
 
     //
@@ -0,0 +1,245 @@
+package bistro.core.data;
+
+import bistro.core.Column;
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash index which maps values of the key columns of a table to ids.
+ * The index is maintained incrementally: new ids are indexed lazily (before the next search) so that their values can be set after appending,
+ * updates via table data methods replace index entries, and removed ids are deleted when they are released.
+ * Found ids are always checked against the current column values so a stale entry can never produce a wrong result.
+ * Each entry also counts records with the same key so that a duplicate is found (by scanning) if the indexed record is changed or removed.
+ * Values changed directly in column data (rather than via table data) are detected by the changed ranges of the key columns:
+ * ids in these ranges are re-indexed before the next search, or the whole index is rebuilt if the changes have been reset in the meantime.
+ */
+class TableIndex {
+
+    protected List<Column> columns;
+    public List<Column> getColumns() {
+        return this.columns;
+    }
+
+    private Map<Object, long[]> entries = new HashMap<>(); // Key (one value or list of values) -> {id, count of records with this key}
+
+    protected static long UNKNOWN = -2; // Id of a key which has duplicates but the indexed record has been changed or removed
+
+    private long indexedStart = 0; // Ids before this one are not in the index (removed)
+    private long indexedEnd = 0; // Ids starting from this one are not in the index yet (new)
+
+    // State of changes of the key columns which is reflected in the index
+    private ColumnData[] indexedData;
+    private long[] indexedVersions;
+    private long[] indexedChangedAt;
+
+    //
+    // Entries (overridden by specialized indexes)
+    //
+
+    // Key of an existing record (a copy which can be stored in the index)
+    private Object key(long id) {
+        if(this.columns.size() == 1) return this.columns.get(0).getData().getValue(id);
+
+        List<Object> key = new ArrayList<>(this.columns.size());
+        for(Column col : this.columns) {
+            key.add(col.getData().getValue(id));
+        }
+        return key;
+    }
+
+    // Key for searching (lists are equal if their elements are equal)
+    private Object key(List<Object> values) {
+        if(this.columns.size() == 1) return values.get(0);
+        return values;
+    }
+
+    // Add the record to the entry of its key (the oldest id is indexed in the case of duplicates)
+    protected void put(long id) {
+        long[] entry = this.entries.get(this.key(id));
+        if(entry == null) this.entries.put(this.key(id), new long[] {id, 1});
+        else entry[1]++;
+    }
+
+    // Delete the record from the entry of its current key
+    protected void delete(long id) {
+        Object key = this.key(id);
+        long[] entry = this.entries.get(key);
+        if(entry == null) return;
+        if(entry[1] > 1) { // Other records with this key exist but we do not know which
+            entry[1]--;
+            if(entry[0] == id) entry[0] = UNKNOWN;
+        }
+        else if(entry[0] == id || entry[0] == UNKNOWN) {
+            this.entries.remove(key);
+        }
+    }
+
+    // Id stored for these values, UNKNOWN or -1
+    protected long lookup(List<Object> values) {
+        long[] entry = this.entries.get(this.key(values));
+        return entry == null ? -1 : entry[0];
+    }
+
+    // Store another id for these values (found by scanning) or delete the entry if it is negative
+    protected void relink(List<Object> values, long id) {
+        Object key = this.key(values);
+        if(id < 0) this.entries.remove(key);
+        else this.entries.get(key)[0] = id;
+    }
+
+    // Index the record with its current key if it is not indexed yet (its previous key might remain in the index as a stale entry)
+    protected void reindex(long id) {
+        long[] entry = this.entries.get(this.key(id));
+        if(entry != null && entry[0] == id) return;
+        this.put(id);
+    }
+
+    protected void clearEntries() {
+        this.entries.clear();
+    }
+
+    protected boolean matches(long id, List<Object> values) {
+        for(int j=0; j<this.columns.size(); j++) {
+            if(!Objects.equals(values.get(j), this.columns.get(j).getData().getValue(id))) return false;
+        }
+        return true;
+    }
+
+    //
+    // Maintenance
+    //
+
+    // Whether changes of these columns might change keys
+    public boolean isIndexed(List<Column> columns) {
+        for(Column col : columns) {
+            if(this.columns.contains(col)) return true;
+        }
+        return false;
+    }
+
+    // Re-index ids whose key values have been changed directly in column data since the last update
+    protected void updateChanged() {
+        boolean rebuild = false;
+        List<Range> ranges = new ArrayList<>();
+        Range indexedRange = new Range(this.indexedStart, this.indexedEnd); // New ids will be indexed with their current values anyway
+
+        for(int j = 0; j < this.columns.size(); j++) {
+            ColumnData data = this.columns.get(j).getData();
+            ChangedRanges changes = ChangedRanges.of(data);
+            long version = changes == null ? 0 : changes.getVersion();
+
+            if(data != this.indexedData[j] || data.getChangedAt() != this.indexedChangedAt[j]) { // All values might have changed
+                rebuild = true;
+            }
+            else if(version != this.indexedVersions[j]) {
+                if(changes.getClearedVersion() > this.indexedVersions[j]) rebuild = true; // Changed ids are not known anymore
+                else ranges.addAll(changes.get(indexedRange));
+            }
+        }
+
+        if(rebuild) { // All ids will be indexed again by the next update
+            this.clearEntries();
+            this.indexedEnd = this.indexedStart;
+        }
+        else {
+            for(Range range : ranges) {
+                for(long i = range.start; i < range.end; i++) {
+                    this.reindex(i);
+                }
+            }
+        }
+
+        this.setChangesIndexed();
+    }
+
+    private void setChangesIndexed() {
+        for(int j = 0; j < this.columns.size(); j++) {
+            ColumnData data = this.columns.get(j).getData();
+            ChangedRanges changes = ChangedRanges.of(data);
+            this.indexedData[j] = data;
+            this.indexedVersions[j] = changes == null ? 0 : changes.getVersion();
+            this.indexedChangedAt[j] = data.getChangedAt();
+        }
+    }
+
+    // Index ids which have been appended since the last update
+    protected void update(Range idRange) {
+        this.updateChanged();
+
+        if(this.indexedStart < idRange.start && this.indexedStart == this.indexedEnd) { // Nothing indexed yet or everything has been released
+            this.indexedStart = idRange.start;
+            this.indexedEnd = idRange.start;
+        }
+        // Removed but not released ids are also indexed because they will be deleted when released
+        for(long i = this.indexedEnd; i < idRange.end; i++) {
+            this.put(i);
+        }
+        this.indexedEnd = Math.max(this.indexedEnd, idRange.end);
+    }
+
+    // Return id of the record with the specified values or -1 if it is not in the index
+    public long find(List<Object> values, Range idRange) {
+        this.update(idRange);
+
+        long id = this.lookup(values);
+        if(id == -1) return -1; // Not indexed (but the id can be UNKNOWN)
+
+        if(idRange.isIn(id) && this.matches(id, values)) return id;
+
+        // The entry is stale (the record was removed or changed) so find another record with these values
+        long found = -1;
+        for(long i = idRange.start; i < idRange.end; i++) {
+            if(this.matches(i, values)) {
+                found = i;
+                break;
+            }
+        }
+        this.relink(values, found);
+        return found;
+    }
+
+    // Delete the entry of the specified id (before its values are changed)
+    public void remove(long id) {
+        this.updateChanged(); // Otherwise the previous key of this id might be unknown
+        if(id < this.indexedStart || id >= this.indexedEnd) return; // Not in the index
+        this.delete(id);
+    }
+
+    // Add the entry of the specified id (after its values are changed)
+    public void add(long id) {
+        this.setChangesIndexed(); // Only this id has been changed since removing it
+        if(id < this.indexedStart || id >= this.indexedEnd) return; // New ids will be indexed later
+        this.put(id);
+    }
+
+    // Delete entries of the ids which are removed from the table
+    public void release(long end) {
+        this.updateChanged(); // Entries are deleted by the current keys
+        for(long i = this.indexedStart; i < Math.min(end, this.indexedEnd); i++) {
+            this.delete(i);
+        }
+        this.indexedStart = Math.max(this.indexedStart, end);
+        this.indexedEnd = Math.max(this.indexedEnd, this.indexedStart);
+    }
+
+    public void clear() {
+        this.clearEntries();
+        this.indexedStart = 0;
+        this.indexedEnd = 0;
+        this.setChangesIndexed();
+    }
+
+    public TableIndex(List<Column> columns) {
+        this.columns = new ArrayList<>(columns);
+        this.indexedData = new ColumnData[columns.size()];
+        this.indexedVersions = new long[columns.size()];
+        this.indexedChangedAt = new long[columns.size()];
+        this.setChangesIndexed(); // Nothing is indexed yet
+    }
+}
@@ -0,0 +1,204 @@
+package bistro.core.data;
+
+import bistro.core.BistroErrorCode;
+import bistro.core.BistroException;
+import bistro.core.ColumnData;
+import bistro.core.Range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongFunction;
+
+/**
+ * Column data which does not store output values but derives them from input ids by using a function.
+ * It is used for columns the values of which are known in advance like interval borders of virtual range tables.
+ * Only the range of valid ids is maintained and hence appending records does not need any memory.
+ * Output values cannot be changed.
+ */
+public class VirtualColumnData implements ColumnData {
+
+    private final UUID id;
+    public UUID getId() {
+        return this.id;
+    }
+
+    private LongFunction<Object> function; // Output value of an id
+
+    //
+    // Data
+    //
+
+    private Range idRange = new Range(); // All valid input ids
+
+    //
+    // Output values
+    //
+
+    @Override
+    public Object getValue(long id) { return this.function.apply(id); }
+
+    @Override
+    public void setValue(long id, Object value) {
+        throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Virtual column data.", "Values of virtual columns are computed and cannot be set.");
+    }
+
+    @Override
+    public void setValues(long start, int length, Object[] values) {
+        throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Virtual column data.", "Values of virtual columns are computed and cannot be set.");
+    }
+
+    @Override
+    public void setValue(Range range, Object value) {
+        throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Virtual column data.", "Values of virtual columns are computed and cannot be set.");
+    }
+    @Override
+    public void setValue(Range range) { // Default value (nothing to initialize)
+    }
+
+    @Override
+    public void setValue(Object value) {
+        throw new BistroException(BistroErrorCode.ELEMENT_UPDATE_ERROR, "Virtual column data.", "Values of virtual columns are computed and cannot be set.");
+    }
+    @Override
+    public void setValue() { // Default value (nothing to initialize)
+    }
+
+    @Override
+    public Object getDefaultValue() { return null; }
+    @Override
+    public void setDefaultValue(Object value) { // Not used since all values are computed
+    }
+
+    //
+    // Input range
+    //
+
+    @Override
+    public Range getIdRange() {
+        return new Range(this.idRange);
+    }
+
+    @Override
+    public void add() {
+        this.add(1);
+    }
+    @Override
+    public void add(long count) {
+        this.idRange.end += count;
+    }
+
+    @Override
+    public void remove() {
+        this.remove(1);
+    }
+    @Override
+    public void remove(long count) { // Remove the specified number of oldest records
+        this.idRange.start += count;
+    }
+    @Override
+    public void removeAll() {
+        this.remove(this.idRange.getLength());
+    }
+
+    @Override
+    public void reset(long start, long end) {
+        this.idRange.start = start;
+        this.idRange.end = end;
+
+        this.setChanged();
+    }
+
+    @Override
+    public void gc() { // Nothing is stored
+    }
+
+    // Return id of the found value or (-(insertion id) - 1) if not found
+    @Override
+    @SuppressWarnings("unchecked")
+    public long findSorted(Object value) {
+
+        // The values are supposed to be sorted (for example, range table)
+        long low = this.idRange.start;
+        long high = this.idRange.end - 1;
+
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = ((Comparable<Object>)this.getValue(mid)).compareTo(value);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid; // Found
+        }
+
+        return -(low + 1); // Not found
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public long findSortedFromStart(Object value) { // Find insertion index with the value strictly less than the specified value
+        long end = this.idRange.end;
+        for(long i = this.idRange.start; i < end; i++) {
+            Object val = this.getValue(i);
+            if(val == null) continue;
+            if(((Comparable<Object>)val).compareTo(value) < 0) { // It is still small
+                continue;
+            }
+            end = i;
+            break;
+        }
+
+        return end;
+    }
+
+    //
+    // Tracking changes (delta)
+    //
+
+    private long resetChangedAt; // Time of reset changes
+    private long changedAt; // Time of latest change
+
+    @Override
+    public boolean isChanged() {
+        return this.changedAt > this.resetChangedAt;
+    }
+
+    @Override
+    public void setChanged() {
+        this.changedAt = System.nanoTime();
+    }
+
+    @Override
+    public void setChanged(Range range) { // Outputs cannot be changed
+    }
+
+    @Override
+    public List<Range> getChangedRanges() {
+        if(this.isChanged()) return Arrays.asList(this.getIdRange());
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void resetChanged() {
+        this.resetChangedAt = this.changedAt;
+    }
+
+    @Override
+    public long getChangedAt() { return this.changedAt; }
+
+    //
+    // Creation
+    //
+
+    public VirtualColumnData(LongFunction<Object> function, long start, long end) {
+        this.id = UUID.randomUUID();
+
+        this.function = function;
+
+        this.reset(start, end);
+
+        this.setChanged();
+        this.resetChanged();
+    }
+}
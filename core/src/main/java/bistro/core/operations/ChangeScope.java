@@ -0,0 +1,66 @@
+package bistro.core.operations;
+
+import bistro.core.Column;
+import bistro.core.ColumnPath;
+import bistro.core.Range;
+import bistro.core.Table;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Determining which input ids of an operation have to be evaluated by using the changes of its input table and its parameter columns.
+ * Added records of the input table are always evaluated. Changed outputs of parameter columns of the input table add only their ids.
+ * Changed outputs of columns of other (linked) tables require evaluating all input ids because it is not known which input ids reference them.
+ * Outputs of newly added records are not considered changes because they are referenced only by new or changed inputs.
+ */
+class ChangeScope {
+
+    // Whether the column has changed outputs of existing (not newly added) records
+    public static boolean isChanged(Column column) {
+        if(!column.getData().isChanged()) return false;
+        Range addedRange = column.getInput().getData().getAddedRange();
+        for(Range changedRange : column.getData().getChangedRanges()) { // Outputs of removed ids are not returned
+            if(!changedRange.isIn(addedRange)) return true;
+        }
+        return false;
+    }
+
+    // Disjoint ordered ranges of input ids to be evaluated or null if all input ids have to be evaluated
+    public static List<Range> getRanges(Table mainTable, List<ColumnPath> paths) {
+        Range idRange = mainTable.getData().getIdRange();
+        List<Range> ranges = new ArrayList<>();
+        ranges.add(mainTable.getData().getAddedRange());
+
+        for(ColumnPath path : paths) {
+            for(int i = 0; i < path.columns.size(); i++) {
+                Column col = path.columns.get(i);
+                if(!isChanged(col)) continue;
+                if(i > 0 || col.getInput() != mainTable) return null;
+                ranges.addAll(col.getData().getChangedRanges());
+            }
+        }
+
+        return merge(ranges, idRange);
+    }
+
+    // Restrict the ranges to valid ids and merge overlapping ranges
+    public static List<Range> merge(List<Range> ranges, Range idRange) {
+        ranges.sort(Comparator.comparingLong(r -> r.start));
+        List<Range> ret = new ArrayList<>();
+        for(Range r : ranges) {
+            long start = Math.max(r.start, idRange.start);
+            long end = Math.min(r.end, idRange.end);
+            if(start >= end) continue;
+            Range last = ret.isEmpty() ? null : ret.get(ret.size() - 1);
+            if(last != null && start <= last.end) {
+                last.end = Math.max(last.end, end);
+            }
+            else {
+                ret.add(new Range(start, end));
+            }
+        }
+        return ret;
+    }
+}
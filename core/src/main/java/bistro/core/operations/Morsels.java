@@ -0,0 +1,115 @@
+package bistro.core.operations;
+
+import bistro.core.BistroErrorCode;
+import bistro.core.BistroException;
+import bistro.core.Range;
+import bistro.core.Schema;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processing a range of ids in parallel by splitting it into morsels (sub-ranges) which are claimed by workers one after another.
+ * Morsel borders are multiples of the morsel size so that workers never write to the same segment or the same word of a null bitmap in column data.
+ * The calling thread also processes morsels and it waits only for morsels which have been already claimed by other workers.
+ * Therefore it never waits for a task which is still in the executor queue and hence it can be called from within tasks of the same executor.
+ */
+class Morsels {
+
+    public static long MORSEL_SIZE = 16384; // Multiple of 64 (and of segment sizes of column data)
+
+    @FunctionalInterface
+    interface Worker {
+        void process(Range range, int workerNo);
+    }
+
+    // Executor used by the schema for concurrent evaluation or the common pool
+    public static Executor getExecutor(Schema schema) {
+        Executor executor = schema.getExecutor();
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    public static int getParallelism(Executor executor) {
+        if(executor instanceof ForkJoinPool) return ((ForkJoinPool)executor).getParallelism() + 1; // Including the calling thread
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // Whether the range is large enough to be split into several morsels
+    public static boolean isParallel(Range range) {
+        return range.getLength() > MORSEL_SIZE;
+    }
+
+    // Process all ids of the range by using the specified maximum number of workers (numbered from 0)
+    public static void process(Executor executor, int workers, Range range, Worker worker) {
+
+        long first = Math.floorDiv(range.start, MORSEL_SIZE);
+        long last = Math.floorDiv(range.end - 1, MORSEL_SIZE);
+        long morselCount = last - first + 1;
+
+        AtomicLong next = new AtomicLong(first); // Next morsel to be claimed
+        AtomicLong done = new AtomicLong(0); // Morsels which are processed
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Object monitor = new Object();
+
+        class Task implements Runnable {
+            int workerNo;
+            @Override
+            public void run() {
+                long morsel;
+                while((morsel = next.getAndIncrement()) <= last) {
+                    try {
+                        if(error.get() == null) {
+                            long start = Math.max(range.start, morsel * MORSEL_SIZE);
+                            long end = Math.min(range.end, (morsel + 1) * MORSEL_SIZE);
+                            worker.process(new Range(start, end), this.workerNo);
+                        }
+                    }
+                    catch(BistroException e) {
+                        error.compareAndSet(null, e);
+                    }
+                    catch(RuntimeException e) {
+                        error.compareAndSet(null, new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error processing a range of ids."));
+                    }
+                    finally {
+                        if(done.incrementAndGet() == morselCount) {
+                            synchronized(monitor) { monitor.notifyAll(); }
+                        }
+                    }
+                }
+            }
+            Task(int workerNo) { this.workerNo = workerNo; }
+        }
+
+        int helpers = (int)Math.min(workers, morselCount) - 1;
+        for(int w = 1; w <= helpers; w++) {
+            try {
+                executor.execute(new Task(w));
+            }
+            catch(RejectedExecutionException e) {
+                break; // Fewer workers
+            }
+        }
+
+        new Task(0).run(); // This thread also works and returns when there is nothing to claim
+
+        // Wait for morsels which are still being processed by other workers
+        synchronized(monitor) {
+            while(done.get() < morselCount) {
+                try {
+                    monitor.wait();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BistroException(BistroErrorCode.EVALUATION_ERROR, "Evaluation interrupted.", "Parallel processing has been interrupted.");
+                }
+            }
+        }
+
+        if(error.get() != null) {
+            throw error.get();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package bistro.core.operations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import bistro.core.*;
 
@@ -16,6 +18,7 @@ public class OpAccumulate implements Operation {
 
     EvalAccumulate adder;
     EvalAccumulate remover;
+    EvalCombine combiner; // If specified, then facts are accumulated in parallel into partial aggregates which are then merged
 
     ColumnPath[] paths;
 
@@ -51,6 +54,20 @@ public class OpAccumulate implements Operation {
     @Override
     public void evaluate() {
 
+        Table mainTable = this.groupPath.getInput(); // Loop/scan table - fact table (not the table product this column is defined)
+
+        //
+        // New definition or new groups (e.g., the group table has been reset): all groups are initialized and all valid facts are accumulated again
+        //
+        TableData groupData = this.column.getInput().getData();
+        if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt() || groupData.getAddedRange().start <= groupData.getIdRange().start) {
+            this.column.getData().setValue(); // Initialize to default value
+            if(this.adder != null) {
+                this.evalAdder(mainTable.getData().getIdRange());
+            }
+            return;
+        }
+
         //
         // Initialize new elements
         //
@@ -59,15 +76,18 @@ public class OpAccumulate implements Operation {
         //
         // Update group elements by data from added/removed facts
         //
-        Table mainTable = this.groupPath.getInput(); // Loop/scan table - fact table (not the table product this column is defined)
+        Range removedRange = mainTable.getData().getRemovedRange();
+        Range addedRange = mainTable.getData().getAddedRange();
 
         if(this.remover != null) {
-            Range removedRange = mainTable.getData().getRemovedRange();
             this.evalUpdater(removedRange, this.remover);
         }
         if(this.adder != null) {
-            Range addedRange = mainTable.getData().getAddedRange();
-            this.evalUpdater(addedRange, this.adder);
+            this.evalAdder(addedRange);
+        }
+
+        if((this.remover != null && removedRange.getLength() > 0) || (this.adder != null && addedRange.getLength() > 0)) {
+            this.column.getData().setChanged(); // Existing groups might have been updated (otherwise dependents process only added ids)
         }
 
         // Full re-evaluation
@@ -75,6 +95,15 @@ public class OpAccumulate implements Operation {
         //this.evalUpdater(mainRange, this.adder);
     }
 
+    protected void evalAdder(Range mainRange) {
+        if(this.combiner != null && Morsels.isParallel(mainRange)) {
+            this.evalUpdaterParallel(mainRange, this.adder);
+        }
+        else {
+            this.evalUpdater(mainRange, this.adder);
+        }
+    }
+
     protected void evalInitialier() {
         Table mainTable = this.column.getInput();
         if(mainTable.getData().isChanged()) {
@@ -128,6 +157,85 @@ public class OpAccumulate implements Operation {
         }
     }
 
+    private static final Object NONE = new Object(); // Partial aggregate of a group without facts
+
+    // Each worker accumulates its facts into its own dense array of partial aggregates (starting from the default value) and then they are combined with the column values
+    // Therefore the default value of the column must be an identity element of the combiner (e.g., 0 for sum)
+    protected void evalUpdaterParallel(Range mainRange, EvalAccumulate lambda) {
+
+        Range groupRange = this.column.getInput().getData().getIdRange();
+        int groupCount = (int)groupRange.getLength();
+        Object defaultValue = this.column.getData().getDefaultValue();
+
+        Executor executor = Morsels.getExecutor(this.column.getSchema());
+        int workers = Morsels.getParallelism(executor);
+        Object[][] partials = new Object[workers][]; // Each worker writes only to its own array
+
+        Morsels.process(executor, workers, mainRange, (range, workerNo) -> {
+            Object[] partial = partials[workerNo];
+            if(partial == null) {
+                partial = new Object[groupCount];
+                Arrays.fill(partial, NONE);
+                partials[workerNo] = partial;
+            }
+
+            Object[] paramValues = new Object[this.paths.length];
+            for(long i=range.start; i<range.end; i++) {
+
+                Object g_out = this.groupPath.getValue(i);
+                if(g_out == null) continue; // Do not accumulate facts without group
+                long g = (Long)g_out;
+                if(!groupRange.isIn(g)) continue; // Including -1 (no group)
+
+                for(int p=0; p<this.paths.length; p++) {
+                    paramValues[p] = this.paths[p].getValue(i);
+                }
+
+                int offset = (int)(g - groupRange.start);
+                Object aggregate = partial[offset] == NONE ? defaultValue : partial[offset];
+
+                try {
+                    partial[offset] = lambda.evaluate(aggregate, paramValues);
+                }
+                catch(BistroException e) {
+                    throw(e);
+                }
+                catch(Exception e) {
+                    throw(new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function."));
+                }
+            }
+        });
+
+        // Merge partial aggregates into the column
+        for(Object[] partial : partials) {
+            if(partial == null) continue;
+            for(int offset = 0; offset < groupCount; offset++) {
+                if(partial[offset] == NONE) continue;
+                long g = groupRange.start + offset;
+                try {
+                    Object result = this.combiner.evaluate(this.column.getData().getValue(g), partial[offset]);
+                    this.column.getData().setValue(g, result);
+                }
+                catch(BistroException e) {
+                    throw(e);
+                }
+                catch(Exception e) {
+                    throw(new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function."));
+                }
+            }
+        }
+    }
+
+    public OpAccumulate(Column column, ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, EvalCombine combiner, ColumnPath[] paths) {
+        this(column, groupPath, adder, remover, paths);
+        this.combiner = combiner;
+    }
+
+    public OpAccumulate(Column column, Column groupColumn, EvalAccumulate adder, EvalAccumulate remover, EvalCombine combiner, Column[] columns) {
+        this(column, groupColumn, adder, remover, columns);
+        this.combiner = combiner;
+    }
+
     public OpAccumulate(Column column, ColumnPath groupPath, EvalAccumulate adder, EvalAccumulate remover, ColumnPath[] paths) {
         this.column = column;
 
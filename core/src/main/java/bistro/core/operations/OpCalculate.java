@@ -3,8 +3,11 @@ package bistro.core.operations;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import bistro.core.*;
+import bistro.core.data.DoubleColumnData;
+import bistro.core.data.LongColumnData;
 
 /**
  * The logic of evaluation of calculate columns.
@@ -24,6 +27,8 @@ public class OpCalculate implements Operation {
     // Operation
     List<ColumnPath> parameterPaths = new ArrayList<>();
     EvalCalculate lambda;
+    boolean threadSafe; // The lambda can be called concurrently and hence different ranges can be evaluated in parallel
+    EvalCalculateVector vectorLambda; // Alternatively, the lambda computes outputs of a batch of inputs with numeric parameters
 
     @Override
     public OperationType getOperationType() {
@@ -43,7 +48,7 @@ public class OpCalculate implements Operation {
 
     @Override
     public void evaluate() {
-        if(this.lambda == null) { // Default
+        if(this.lambda == null && this.vectorLambda == null) { // Default
             this.column.getData().setValue(); // Reset
             return;
         }
@@ -64,42 +69,107 @@ public class OpCalculate implements Operation {
             }
         }
 
-        if(!fullScope) { // Some column dependency has changes
-            List<Element> deps = this.getDependencies();
-            for(Element e : deps) {
-                if(!(e instanceof Column)) continue;
-                if(((Column)e).getData().isChanged()) { // There is a column with some changes
-                    fullScope = true;
-                    break;
-                }
+        List<Range> ranges = null; // Added ids and ids with changed parameters
+        if(!fullScope) {
+            ranges = ChangeScope.getRanges(mainTable, this.parameterPaths);
+            if(ranges == null) { // Changes cannot be mapped to input ids
+                fullScope = true;
             }
         }
 
-        if(!fullScope) {
-            mainRange = mainTable.getData().getAddedRange();
+        if(fullScope) {
+            ranges = Arrays.asList(mainRange);
         }
 
         //
         // Update dirty elements
         //
 
+        for(Range range : ranges) {
+            if(this.threadSafe && Morsels.isParallel(range)) { // Each worker writes batches of its own morsels to the output
+                Executor executor = Morsels.getExecutor(this.column.getSchema());
+                Morsels.process(executor, Morsels.getParallelism(executor), range, (r, workerNo) -> this.evaluate(r));
+            }
+            else {
+                this.evaluate(range);
+            }
+            this.column.getData().setChanged(range); // Batches are written without registering changes
+        }
+
+        if(fullScope) {
+            this.column.getData().setChanged(); // Existing outputs might have changed (otherwise dependents process only added and changed ids)
+        }
+    }
+
+    protected void evaluate(Range mainRange) {
+
+        if(this.vectorLambda != null) {
+            this.evaluateVector(mainRange);
+            return;
+        }
+
         // Get all necessary parameters and prepare (resolve) the corresponding data (function) objects for reading valuePaths
         List<ColumnPath> paramPaths = this.parameterPaths;
         Object[] paramValues = new Object[paramPaths.size() + 1]; // Will store valuePaths for all params and current output at the end
-        Object result; // Will be written to output for each input
+        Object[] results = new Object[BATCH_SIZE]; // Will be written to output for each input of a batch
+
+        for(long start = mainRange.start; start < mainRange.end; start += BATCH_SIZE) {
+            int length = (int)Math.min(BATCH_SIZE, mainRange.end - start);
+
+            for(int k = 0; k < length; k++) {
 
-        for(long i=mainRange.start; i<mainRange.end; i++) {
+                // Read all parameter valuePaths
+                for(int p=0; p<paramPaths.size(); p++) {
+                    paramValues[p] = paramPaths.get(p).getValue(start + k);
+                }
 
-            // Read all parameter valuePaths
-            for(int p=0; p<paramPaths.size(); p++) {
-                paramValues[p] = paramPaths.get(p).getValue(i);
+                //
+                // Call user-defined function
+                //
+                try {
+                    results[k] = this.lambda.evaluate(paramValues);
+                }
+                catch(BistroException e) {
+                    throw(e);
+                }
+                catch(Exception e) {
+                    throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+                }
+            }
+
+            // Update output (morsels of other workers might be written concurrently)
+            this.column.getData().setValues(start, length, results);
+        }
+
+    }
+
+    protected static int BATCH_SIZE = 1024;
+
+    protected void evaluateVector(Range mainRange) {
+
+        List<ColumnPath> paramPaths = this.parameterPaths;
+        double[][] params = new double[paramPaths.size()][BATCH_SIZE];
+        double[] outputs = new double[BATCH_SIZE];
+        boolean[] nulls = new boolean[BATCH_SIZE]; // Inputs with null parameters have null outputs
+
+        ColumnData data = this.column.getData();
+        long[] longs = data instanceof LongColumnData ? new long[BATCH_SIZE] : null; // Whole outputs (NaN is stored as null)
+        Object[] results = new Object[BATCH_SIZE]; // Boxed outputs for other column data
+
+        for(long start = mainRange.start; start < mainRange.end; start += BATCH_SIZE) {
+            int length = (int)Math.min(BATCH_SIZE, mainRange.end - start);
+
+            // Read parameter values of the batch
+            Arrays.fill(nulls, 0, length, false);
+            for(int p = 0; p < paramPaths.size(); p++) {
+                read(paramPaths.get(p), start, length, params[p], nulls);
             }
 
             //
             // Call user-defined function
             //
             try {
-                result = this.lambda.evaluate(paramValues);
+                this.vectorLambda.evaluate(params, outputs, length);
             }
             catch(BistroException e) {
                 throw(e);
@@ -108,10 +178,71 @@ public class OpCalculate implements Operation {
                 throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
             }
 
-            // Update output
-            this.column.getData().setValue(i, result);
+            // Update output (morsels of other workers might be written concurrently)
+            if(data instanceof DoubleColumnData) {
+                ((DoubleColumnData)data).setDoubles(start, length, outputs);
+                for(int k = 0; k < length; k++) {
+                    if(nulls[k]) ((DoubleColumnData)data).setNull(start + k);
+                }
+            }
+            else if(data instanceof LongColumnData) {
+                for(int k = 0; k < length; k++) {
+                    double output = outputs[k];
+                    if(nulls[k] || Double.isNaN(output)) {
+                        nulls[k] = true;
+                        continue;
+                    }
+                    if(!(output >= Long.MIN_VALUE && output < Long.MAX_VALUE)) { // Infinity or out of range would be silently saturated
+                        throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, "Output " + output + " cannot be stored in a long column.", "Error writing output of user-defined function.") );
+                    }
+                    longs[k] = (long)output;
+                }
+                ((LongColumnData)data).setLongs(start, length, longs);
+                for(int k = 0; k < length; k++) {
+                    if(nulls[k]) ((LongColumnData)data).setNull(start + k);
+                }
+            }
+            else {
+                for(int k = 0; k < length; k++) {
+                    results[k] = nulls[k] ? null : outputs[k];
+                }
+                data.setValues(start, length, results);
+            }
         }
+    }
 
+    // Read numeric values of a batch of inputs without boxing if they are stored in primitive column data
+    protected static void read(ColumnPath path, long start, int length, double[] values, boolean[] nulls) {
+        ColumnData data = path.columns.size() == 1 ? path.columns.get(0).getData() : null;
+
+        if(data instanceof DoubleColumnData) {
+            DoubleColumnData doubles = (DoubleColumnData)data;
+            doubles.getDoubles(start, length, values);
+            for(int k = 0; k < length; k++) {
+                if(doubles.isNull(start + k)) nulls[k] = true;
+            }
+        }
+        else if(data instanceof LongColumnData) {
+            LongColumnData longs = (LongColumnData)data;
+            for(int k = 0; k < length; k++) {
+                if(longs.isNull(start + k)) nulls[k] = true;
+                else values[k] = longs.getLong(start + k);
+            }
+        }
+        else {
+            for(int k = 0; k < length; k++) {
+                Object value = path.getValue(start + k);
+                if(value == null) {
+                    nulls[k] = true;
+                }
+                else if(value instanceof Number) {
+                    values[k] = ((Number)value).doubleValue();
+                }
+                else {
+                    throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, "Parameter value " + value + " is not a number.", "Error reading parameters of vector function.") );
+                }
+            }
+        }
     }
 
     // Prepare the definition to execution (convert definition to executable operation)
@@ -145,14 +276,38 @@ public class OpCalculate implements Operation {
     }
 
     public OpCalculate(Column column, EvalCalculate lambda, ColumnPath[] paths) {
+        this(column, lambda, false, paths);
+    }
+
+    public OpCalculate(Column column, EvalCalculate lambda, Column[] columns) {
+        this(column, lambda, false, columns);
+    }
+
+    public OpCalculate(Column column, EvalCalculate lambda, boolean threadSafe, ColumnPath[] paths) {
         this.column = column;
         this.lambda = lambda;
+        this.threadSafe = threadSafe;
         this.parameterPaths = Arrays.asList(paths);
     }
 
-    public OpCalculate(Column column, EvalCalculate lambda, Column[] columns) {
+    public OpCalculate(Column column, EvalCalculateVector vectorLambda, ColumnPath[] paths) {
+        this.column = column;
+        this.vectorLambda = vectorLambda;
+        this.parameterPaths = Arrays.asList(paths);
+    }
+
+    public OpCalculate(Column column, EvalCalculateVector vectorLambda, Column[] columns) {
+        this.column = column;
+        this.vectorLambda = vectorLambda;
+        for (int i = 0; i < columns.length; i++) {
+            this.parameterPaths.add(new ColumnPath(columns[i]));
+        }
+    }
+
+    public OpCalculate(Column column, EvalCalculate lambda, boolean threadSafe, Column[] columns) {
         this.column = column;
         this.lambda = lambda;
+        this.threadSafe = threadSafe;
         for (int i = 0; i < columns.length; i++) {
             this.parameterPaths.add(new ColumnPath(columns[i]));
         }
@@ -69,80 +69,113 @@ public class OpLink implements Operation {
 
         Table mainTable = this.column.getInput();
 
-        // Currently we make full scan by re-evaluating all existing input ids
-        Range mainRange = this.column.getInput().getData().getIdRange();
-
         //
-        // Prepare value paths/exprs for search/find_OLD
+        // Determine the scope of dirtiness
         //
-        //List<List<ColumnPath>> rhsParamPaths = new ArrayList<>();
-        //List<Object[]> rhsParamValues = new ArrayList<>();
-        Object rhsResult;
 
-        for(long i=mainRange.start; i < mainRange.end; i++) {
+        boolean fullScope = this.isFullScope();
 
-            // Retrieve the fact property value
-            rhsResult = this.valuePaths.get(0).getValue(i);
-
-            //
-            // Find an element in the type table which corresponds to this value (can be null if not found and not added)
-            //
-            Object out = rangeZableDef.findRange(rhsResult, this.isProj);
+        //
+        // Map fact values to intervals in batches
+        //
+        Object[] values = new Object[BATCH_SIZE];
+        long[] ids = new long[BATCH_SIZE];
 
-            // Update output
-            this.column.getData().setValue(i, out);
-        }
-    }
+        for(Range mainRange : this.getRanges(fullScope)) {
+            for(long start = mainRange.start; start < mainRange.end; start += BATCH_SIZE) {
+                int length = (int)Math.min(BATCH_SIZE, mainRange.end - start);
 
-    protected void evalPaths() {
+                // Retrieve the fact property values
+                for(int k = 0; k < length; k++) {
+                    values[k] = this.valuePaths.get(0).getValue(start + k);
+                }
 
-        Table typeTable = this.column.getOutput();
+                //
+                // Find elements in the type table which correspond to these values (-1 if not found and not added)
+                //
+                rangeZableDef.findRange(values, length, ids, this.isProj);
 
-        Table mainTable = this.column.getInput();
+                // Update output
+                for(int k = 0; k < length; k++) {
+                    this.column.getData().setValue(start + k, ids[k]);
+                }
+            }
+        }
 
-        //
-        // Determine the scope of dirtiness
-        //
+        if(fullScope) {
+            this.column.getData().setChanged(); // Existing outputs might have changed (otherwise dependents process only added ids)
+        }
+    }
 
-        Range mainRange = mainTable.getData().getIdRange();
+    // Whether all existing input ids have to be evaluated again rather than only the added ones
+    public boolean isFullScope() {
 
-        boolean fullScope = false;
+        if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Definition has changes
+            return true;
+        }
 
-        if(isProj) { // Currently project columns require full re-evaluation (because they actually popoulate a table)
-            fullScope = true;
+        if(ChangeScope.getRanges(this.column.getInput(), this.valuePaths) == null) { // Changes of dependencies cannot be mapped to input ids
+            return true;
         }
 
-        if(!fullScope) {
-            if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Definition has changes
-                fullScope = true;
+        if(this.isProj) { // Changed facts could leave unused records in the output table so it is populated anew
+            for(Column col : ColumnPath.getColumns(this.valuePaths)) {
+                if(ChangeScope.isChanged(col)) return true;
             }
         }
 
-        if(!fullScope) { // Some column dependency has changes
-            List<Element> deps = this.getDependencies();
-            for(Element e : deps) {
-                if(!(e instanceof Column)) continue;
-                if(((Column)e).getData().isChanged()) { // There is a column with some changes
-                    fullScope = true;
-                    break;
-                }
-            }
+        if(this.column.getOutput().getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Type table operation has changed
+            return true;
         }
 
-        if(!fullScope) {
-            if(typeTable.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Type table operation has changed
-                fullScope = true;
-            }
+        // Existing links remain valid unless the output table has been populated anew
+        TableData typeData = this.column.getOutput().getData();
+        if(typeData.getAddedRange().start <= typeData.getIdRange().start) { // All records are new (e.g., the table has been reset)
+            return true;
         }
 
-        if(!fullScope) {
-            mainRange = mainTable.getData().getAddedRange();
+        return false;
+    }
+
+    // Input ids to be evaluated: all ids or only added ids and ids with changed values
+    protected List<Range> getRanges(boolean fullScope) {
+        Table mainTable = this.column.getInput();
+        if(fullScope) return Arrays.asList(mainTable.getData().getIdRange());
+        return ChangeScope.getRanges(mainTable, this.valuePaths);
+    }
+
+    protected void evalPaths() {
+
+        Table typeTable = this.column.getOutput();
+
+        Table mainTable = this.column.getInput();
+
+        //
+        // Determine the scope of dirtiness
+        //
+
+        // Ids of virtual product tables are computed from keys. Key columns of other output tables are indexed so that each lookup does not scan the whole table
+        boolean computeIds = typeTable.getOperation() instanceof OpProduct && ((OpProduct)typeTable.getOperation()).canFindId(this.keyColumns);
+        if(!computeIds) {
+            typeTable.getData().createIndex(this.keyColumns);
         }
 
+        boolean fullScope = this.isFullScope();
+        List<Range> ranges = this.getRanges(fullScope);
+
         //
         // Update dirty elements
         //
 
+        // One numeric key is searched in batches by using a primitive index of the output table
+        if(!computeIds && this.keyColumns.size() == 1 && typeTable.getData().getLongIndexClass(this.keyColumns.get(0)) != null) {
+            for(Range mainRange : ranges) {
+                this.evalPathsBatch(mainRange);
+            }
+            if(fullScope) this.column.getData().setChanged(); // Existing outputs might have changed
+            return;
+        }
+
         // Prepare value paths/exprs for search/find_OLD
         //List<List<ColumnPath>> rhsParamPaths = new ArrayList<>();
         //List<Object[]> rhsParamValues = new ArrayList<>();
@@ -157,40 +190,110 @@ public class OpLink implements Operation {
             rhsResults.add(null);
         }
 
-        for(long i=mainRange.start; i < mainRange.end; i++) {
+        for(Range mainRange : ranges) {
+            for(long i=mainRange.start; i < mainRange.end; i++) {
 
-            // Evaluate ALL child rhs expressions by producing an array/record of their results
-            for(int keyNo = 0; keyNo < this.keyColumns.size(); keyNo++) {
+                // Evaluate ALL child rhs expressions by producing an array/record of their results
+                for(int keyNo = 0; keyNo < this.keyColumns.size(); keyNo++) {
 
-                // Read a value from the column path
-                Object result = this.valuePaths.get(keyNo).getValue(i);
+                    // Read a value from the column path
+                    Object result = this.valuePaths.get(keyNo).getValue(i);
+
+                    rhsResults.set(keyNo, result);
+                }
 
-                rhsResults.set(keyNo, result);
+                long idx = this.find(rhsResults);
+
+                // Update output (-1 if not found)
+                this.column.getData().setValue(i, idx);
             }
+        }
+
+        if(fullScope) {
+            this.column.getData().setChanged(); // Existing outputs might have changed (otherwise dependents process only added and changed ids)
+        }
+    }
 
-            //
-            // Find element in the type table which corresponds to these expression results
-            //
-            long idx = typeTable.getData().findValues(rhsResults, this.keyColumns);
-
-            //
-            // For project columns: if not found, the append since it is a populating column
-            //
-            if(this.isProj && idx < 0) {
-
-                // Check if this record satisfies the product condition and we really can add it
-                OpProduct productOp = (OpProduct)typeTable.getOperation(); // Where condition is used only in product tables
-                boolean whereTrue = productOp.isWhereTrue(rhsResults, this.keyColumns);
-                if(whereTrue) {
-                    // Really append
-                    idx = typeTable.getData().add();
-                    typeTable.getData().setValues(idx, this.keyColumns, rhsResults);
+    protected static int BATCH_SIZE = 1024;
+
+    protected void evalPathsBatch(Range mainRange) {
+
+        Table typeTable = this.column.getOutput();
+        Column keyColumn = this.keyColumns.get(0);
+        ColumnPath valuePath = this.valuePaths.get(0);
+
+        Object[] values = new Object[BATCH_SIZE];
+        long[] keys = new long[BATCH_SIZE]; // Numeric values to be searched in one batch
+        int[] offsets = new int[BATCH_SIZE]; // Offset of each key within the batch
+        long[] ids = new long[BATCH_SIZE]; // Found ids of the keys
+        long[] outputs = new long[BATCH_SIZE];
+
+        Class<?> keyClass = typeTable.getData().getLongIndexClass(keyColumn); // Keys are equal only to values of the same class
+
+        List<Object> rhsResults = Arrays.asList(new Object[1]);
+
+        for(long start = mainRange.start; start < mainRange.end; start += BATCH_SIZE) {
+            int length = (int)Math.min(BATCH_SIZE, mainRange.end - start);
+
+            // Collect numeric keys. Other values (e.g., null) are searched individually
+            int count = 0;
+            for(int k = 0; k < length; k++) {
+                Object value = valuePath.getValue(start + k);
+                values[k] = value;
+                outputs[k] = -2; // Not searched yet
+                if(value != null && value.getClass() == keyClass) {
+                    keys[count] = ((Number)value).longValue();
+                    offsets[count] = k;
+                    count++;
                 }
             }
 
-            // Update output (-1 if not found)
-            this.column.getData().setValue(i, idx);
+            typeTable.getData().findValues(keys, count, keyColumn, ids);
+            for(int c = 0; c < count; c++) {
+                outputs[offsets[c]] = ids[c];
+            }
+
+            for(int k = 0; k < length; k++) {
+                long idx = outputs[k];
+
+                // Project columns append records for not found keys (which could also be appended for previous facts of this batch)
+                if(idx == -2 || (idx < 0 && this.isProj)) {
+                    rhsResults.set(0, values[k]);
+                    idx = this.find(rhsResults);
+                }
+
+                this.column.getData().setValue(start + k, idx);
+            }
+        }
+    }
+
+    // Find element in the type table which corresponds to these expression results
+    protected long find(List<Object> rhsResults) {
+
+        Table typeTable = this.column.getOutput();
+
+        if(typeTable.getOperation() instanceof OpProduct && ((OpProduct)typeTable.getOperation()).canFindId(this.keyColumns)) { // Virtual product table contains all combinations
+            return ((OpProduct)typeTable.getOperation()).findId(rhsResults, this.keyColumns);
         }
+
+        long idx = typeTable.getData().findValues(rhsResults, this.keyColumns);
+
+        //
+        // For project columns: if not found, the append since it is a populating column
+        //
+        if(this.isProj && idx < 0) {
+
+            // Check if this record satisfies the product condition and we really can add it
+            OpProduct productOp = (OpProduct)typeTable.getOperation(); // Where condition is used only in product tables
+            boolean whereTrue = productOp.isWhereTrue(rhsResults, this.keyColumns);
+            if(whereTrue) {
+                // Really append
+                idx = typeTable.getData().add();
+                typeTable.getData().setValues(idx, this.keyColumns, rhsResults);
+            }
+        }
+
+        return idx; // -1 if not found
     }
 
     public OpLink(Column column, ColumnPath[] valuePaths, Column[] keyColumns) {
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import bistro.core.*;
+import bistro.core.data.VirtualColumnData;
 
 public class OpProduct implements Operation {
 
@@ -14,6 +15,19 @@ public class OpProduct implements Operation {
     EvalCalculate whereLambda;
     List<ColumnPath> whereParameterPaths = new ArrayList<>();
 
+    // Virtual product table contains all combinations and does not store keys.
+    // Record id is a mixed-radix number with key ids as digits (the last key changes fastest) and key values are computed from ids.
+    boolean virtual;
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    // Key ranges of the current population (empty dimensions have one digit with the id before their start)
+    long[] starts;
+    long[] lengths;
+    long[] strides;
+    long base; // Id of the first key which corresponds to digit 0 (only the first key table can grow and shrink without changing ids)
+
     @Override
     public OperationType getOperationType() {
         return OperationType.PRODUCT;
@@ -52,92 +66,303 @@ public class OpProduct implements Operation {
     @Override
     public void evaluate() {
 
+        if(this.virtual) {
+            this.evalVirtual();
+            return;
+        }
+
         // Find all local greater dimensions to be varied (including the super-dim)
         List<Column> keyColumns = this.table.getAttributes();
         int colCount = keyColumns.size(); // Dimensionality - how many free dimensions
 
-        // Initialize population
-        //for(DcColumn col :cols) {
-        //    col.getData().setAutoIndex(false);
-        //   col.getData().nullify();
-        //}
+        TableData data = this.table.getData();
 
         //
-        // The current state of the search procedure
+        // Ranges of ids of each dimension: all valid ids and the ids which existed during previous evaluation
         //
-        long[] offsets = new long[colCount]; // Current id of each dimension (incremented during search)
-        for (int i = 0; i < colCount; i++) offsets[i] = -1;
+        long[] starts = new long[colCount];
+        long[] ends = new long[colCount];
+        long[] oldEnds = new long[colCount]; // New ids are in [oldEnd,end)
+        boolean[] removed = new boolean[colCount];
 
-        long[] starts = new long[colCount]; // Start ids for each dimension
-        for (int i = 0; i < colCount; i++) starts[i] = keyColumns.get(i).getOutput().getData().getIdRange().start;
+        boolean fullScope = false;
 
-        long[] lengths = new long[colCount]; // Length of each dimension (how many ids in each dimension)
-        for (int i = 0; i < colCount; i++) lengths[i] = keyColumns.get(i).getOutput().getData().getLength();
+        if(this.table.getDefinitionChangedAt() > data.getChangedAt()) { // Definition has changes
+            fullScope = true;
+        }
 
-        int top = -1; // The current level/top product we change the offset. Depth of recursion.
-        do ++top; while (top < colCount && lengths[top] == 0);
+        if(data.getLength() == 0) { // Nothing to be updated
+            fullScope = true;
+        }
 
-        // Alternative recursive iteration: http://stackoverflow.com/questions/13655299/c-sharp-most-efficient-way-to-iterate-through-multiple-arrays-list
-        // Alternative: in fact, we can fill each column with integer values alternated periodically depending on its index in the list of columns, e.g., column 0 will always have first half 0s and second half 1s, while next column will alternative two times faster and the last column will always look like 0101010101
+        for(Element e : this.getDependencies()) { // Columns of the where condition have changes
+            if(!(e instanceof Column)) continue;
+            if(ChangeScope.isChanged((Column)e)) fullScope = true; // Changes of added key records are processed as added combinations
+        }
 
-        while (top >= 0) {
-            if (top == colCount) // New element is ready. Process it.
-            {
-                List<Object> record = new ArrayList<>();
-                for(int i=0; i < offsets.length; i++) {
-                    record.add(offsets[i] + starts[i]);
-                }
+        for(int i = 0; i < colCount; i++) {
+            TableData keyData = keyColumns.get(i).getOutput().getData();
+            Range idRange = keyData.getIdRange();
+            starts[i] = idRange.start;
+            ends[i] = idRange.end;
+            oldEnds[i] = Math.min(Math.max(keyData.getAddedRange().start, idRange.start), idRange.end);
+            removed[i] = keyData.getRemovedRange().getLength() > 0;
+
+            // Empty dimensions are skipped (records get the id before the start) so existing records are not valid if it was or becomes empty
+            if(idRange.getLength() == 0) {
+                if(removed[i]) fullScope = true;
+                starts[i] = idRange.start - 1;
+                ends[i] = idRange.start;
+                oldEnds[i] = idRange.start;
+            }
+            else if(oldEnds[i] == starts[i]) { // All ids are new
+                fullScope = true;
+            }
+        }
 
-                //
-                // Check if this record satisfies the product condition
-                //
-                boolean whereTrue = true;
-                try {
-                    whereTrue = this.isWhereTrue(record, keyColumns);
-                }
-                catch(BistroException e) {
-                    throw(e);
-                }
-                catch(Exception e) {
-                    throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error checking where condition.") );
-                }
+        //
+        // Remove records which reference removed ids. They are normally the oldest records (e.g., old dates), otherwise the table is populated again.
+        //
+        if(!fullScope) {
+            fullScope = !this.removeRecords(keyColumns, starts, removed);
+        }
+
+        if(fullScope) {
+            data.reset();
+            this.populate(keyColumns, starts, ends);
+            return;
+        }
+
+        //
+        // Append only new combinations: each of them has new ids in some dimension and only old ids in all previous dimensions
+        //
+        for(int k = 0; k < colCount; k++) {
+            if(oldEnds[k] == ends[k]) continue; // No new ids in this dimension
+
+            long[] deltaStarts = starts.clone();
+            long[] deltaEnds = ends.clone();
+            for(int i = 0; i < k; i++) deltaEnds[i] = oldEnds[i]; // Old ids
+            deltaStarts[k] = oldEnds[k]; // New ids
+
+            this.populate(keyColumns, deltaStarts, deltaEnds);
+        }
+    }
+
+    // Remove the oldest records with removed keys and return false if such records exist also elsewhere
+    protected boolean removeRecords(List<Column> keyColumns, long[] starts, boolean[] removed) {
+        boolean hasRemoved = false;
+        for(boolean r : removed) hasRemoved |= r;
+        if(!hasRemoved) return true;
+
+        Range idRange = this.table.getData().getIdRange();
+
+        long count = 0; // Records to be removed
+        for(long id = idRange.start; id < idRange.end; id++) {
+            boolean valid = this.isValid(id, keyColumns, starts, removed);
+            if(!valid && count == id - idRange.start) {
+                count++; // Still among the oldest records
+            }
+            else if(!valid) {
+                return false;
+            }
+        }
+
+        this.table.getData().remove(count);
+        return true;
+    }
+
+    private boolean isValid(long id, List<Column> keyColumns, long[] starts, boolean[] removed) {
+        for(int i = 0; i < removed.length; i++) {
+            if(!removed[i]) continue;
+            Object key = keyColumns.get(i).getData().getValue(id);
+            if(key == null || (Long)key < starts[i]) return false;
+        }
+        return true;
+    }
+
+    protected static int BATCH_SIZE = 1024;
 
-                //
-                // Append a new record if necessary
-                //
-                if(whereTrue == true) {
-                    long input = this.table.getData().add();
-                    this.table.getData().setValues(input, keyColumns, record);
+    // Append all combinations of ids from the specified ranges which satisfy the where condition
+    protected void populate(List<Column> keyColumns, long[] starts, long[] ends) {
+        int colCount = keyColumns.size();
+
+        for(int i = 0; i < colCount; i++) {
+            if(starts[i] >= ends[i]) return; // No combinations
+        }
+
+        // Records are first collected in a buffer and then appended in one operation
+        long[][] buffer = new long[colCount][BATCH_SIZE];
+        int count = 0;
+
+        int[] paramColumnIndex = this.getParamColumnIndex(keyColumns);
+        Object[] paramValues = this.whereParameterPaths != null ? new Object[this.whereParameterPaths.size() + 1] : null;
+
+        long[] record = starts.clone(); // Current combination (the last dimension changes fastest)
+        while(true) {
+
+            //
+            // Check if this record satisfies the product condition
+            //
+            boolean whereTrue = true;
+            try {
+                whereTrue = this.isWhereTrue(record, paramColumnIndex, paramValues);
+            }
+            catch(BistroException e) {
+                throw(e);
+            }
+            catch(Exception e) {
+                throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error checking where condition.") );
+            }
+
+            if(whereTrue) {
+                for(int i = 0; i < colCount; i++) buffer[i][count] = record[i];
+                count++;
+                if(count == BATCH_SIZE) {
+                    this.append(keyColumns, buffer, count);
+                    count = 0;
                 }
+            }
 
+            // Next combination
+            int top = colCount - 1;
+            while(top >= 0 && ++record[top] == ends[top]) {
+                record[top] = starts[top];
                 top--;
-                while (top >= 0 && lengths[top] == 0) // Go up by skipping empty dimensions and reseting
-                { offsets[top--] = -1; }
             }
-            else
-            {
-                // Find the next valid offset
-                offsets[top]++;
-
-                if (offsets[top] < lengths[top]) // Offset chosen
-                {
-                    do ++top;
-                    while (top < colCount && lengths[top] == 0); // Go up (forward) by skipping empty dimensions
-                }
-                else // Level is finished. Go back.
-                {
-                    do { offsets[top--] = -1; }
-                    while (top >= 0 && lengths[top] == 0); // Go down (backward) by skipping empty dimensions and reseting
-                }
+            if(top < 0) break;
+        }
+
+        this.append(keyColumns, buffer, count);
+    }
+
+    private void append(List<Column> keyColumns, long[][] buffer, int count) {
+        if(count == 0) return;
+        Range added = this.table.getData().add(count);
+        // New records are not indexed yet so key column data can be written directly
+        for(int i = 0; i < keyColumns.size(); i++) {
+            ColumnData keyData = keyColumns.get(i).getData();
+            long[] keys = buffer[i];
+            for(int r = 0; r < count; r++) {
+                keyData.setValue(added.start + r, keys[r]);
+            }
+        }
+    }
+
+    //
+    // Virtual product
+    //
+
+    protected void evalVirtual() {
+
+        List<Column> keyColumns = this.table.getAttributes();
+        int colCount = keyColumns.size();
+
+        TableData data = this.table.getData();
+
+        long[] starts = new long[colCount];
+        long[] lengths = new long[colCount];
+        for(int i = 0; i < colCount; i++) {
+            Range idRange = keyColumns.get(i).getOutput().getData().getIdRange();
+            starts[i] = idRange.start;
+            lengths[i] = idRange.getLength();
+        }
+
+        boolean fullScope = false;
+
+        if(this.table.getDefinitionChangedAt() > data.getChangedAt() || this.starts == null || this.starts.length != colCount) {
+            fullScope = true;
+        }
+
+        for(int i = 0; i < colCount && !fullScope; i++) {
+            if(i == 0 && lengths[0] > 0 && this.lengths[0] > 0 && starts[0] >= this.starts[0] && starts[0] <= this.starts[0] + this.lengths[0]) continue; // Changes of the first key only shift the id range
+            if(starts[i] != this.starts[i] || lengths[i] != this.lengths[i]) fullScope = true; // Digits of all ids change
+        }
+
+        for(Column col : keyColumns) { // Key columns added after definition
+            if(!(col.getData() instanceof VirtualColumnData)) fullScope = true;
+        }
+
+        if(fullScope) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.strides = new long[colCount];
+            long stride = 1;
+            for(int i = colCount - 1; i >= 0; i--) {
+                this.strides[i] = stride;
+                stride = Math.multiplyExact(stride, Math.max(lengths[i], 1));
+            }
+            this.base = colCount > 0 && lengths[0] > 0 ? starts[0] : 0;
+
+            data.reset();
+            for(int i = 0; i < colCount; i++) {
+                final int keyNo = i;
+                keyColumns.get(i).setData(new VirtualColumnData(id -> this.getKey(id, keyNo), 0, 0));
+            }
+            data.add(stride);
+            return;
+        }
+
+        // Only the first key table has changed: remove and append ids of its removed and added records
+        if(colCount == 0) return;
+        long stride = this.strides[0];
+        long start = (starts[0] - this.base) * stride;
+        long end = (starts[0] + lengths[0] - this.base) * stride;
+        this.starts[0] = starts[0];
+        this.lengths[0] = lengths[0];
+
+        Range idRange = data.getIdRange();
+        if(start > idRange.start) data.remove(start - idRange.start);
+        if(end > idRange.end) data.add(end - idRange.end);
+    }
+
+    // Key id (digit) of the specified record id
+    protected long getKey(long id, int keyNo) {
+        long digit = id / this.strides[keyNo];
+        if(keyNo == 0) {
+            return this.lengths[0] > 0 ? this.base + digit : this.starts[0] - 1;
+        }
+        if(this.lengths[keyNo] == 0) return this.starts[keyNo] - 1;
+        return this.starts[keyNo] + digit % this.lengths[keyNo];
+    }
+
+    // Compute id of the record with the specified key ids (-1 if it does not exist)
+    public long findId(List<Object> values, List<Column> columns) {
+        List<Column> keyColumns = this.table.getAttributes();
+        if(this.strides == null || this.strides.length != keyColumns.size()) return -1; // Not populated
+
+        long id = 0;
+        for(int i = 0; i < keyColumns.size(); i++) {
+            Object value = values.get(columns.indexOf(keyColumns.get(i)));
+            if(!(value instanceof Number)) return -1;
+            long key = ((Number)value).longValue();
+
+            long digit;
+            if(this.lengths[i] == 0) {
+                if(key != this.starts[i] - 1) return -1;
+                digit = 0;
             }
+            else {
+                if(key < this.starts[i] || key >= this.starts[i] + this.lengths[i]) return -1;
+                digit = key - (i == 0 ? this.base : this.starts[i]);
+            }
+            id += digit * this.strides[i];
         }
+        return id;
+    }
 
-        // Finalize population
-        //for(DcColumn col :cols) {
-        //    col.getData().reindex();
-        //    col.getData().setAutoIndex(true);
-        //}
+    // Whether record ids can be computed from the values of these columns
+    public boolean canFindId(List<Column> columns) {
+        List<Column> keyColumns = this.table.getAttributes();
+        return this.virtual && columns.size() == keyColumns.size() && columns.containsAll(keyColumns);
+    }
 
+    // Key columns of virtual tables get storage again
+    private void materialize() {
+        Range idRange = this.table.getData().getIdRange();
+        for(Column col : this.table.getAttributes()) {
+            if(!(col.getData() instanceof VirtualColumnData)) continue;
+            col.setData(col.getStorageFactory().createColumnData(col, idRange.start, idRange.end));
+        }
     }
 
     // Apply where-lambda to one record
@@ -185,11 +410,40 @@ public class OpProduct implements Operation {
         return result;
     }
 
+    // For each where parameter path, the index of its first segment in the list of key columns
+    private int[] getParamColumnIndex(List<Column> columns) {
+        if(this.whereLambda == null || this.whereParameterPaths == null) return null;
+        int[] paramColumnIndex = new int[this.whereParameterPaths.size()];
+        for(int i=0; i < paramColumnIndex.length; i++) {
+            Column firstSegment = this.whereParameterPaths.get(i).columns.get(0); // First segment
+            paramColumnIndex[i] = columns.indexOf(firstSegment); // Index of the first segment in the record
+        }
+        return paramColumnIndex;
+    }
+
+    private boolean isWhereTrue(long[] record, int[] paramColumnIndex, Object[] paramValues) {
+        if(paramColumnIndex == null) return true;
+
+        for(int p=0; p < paramColumnIndex.length; p++) {
+            paramValues[p] = this.whereParameterPaths.get(p).getValueSkipFirst(record[paramColumnIndex[p]]);
+        }
+
+        return (boolean) this.whereLambda.evaluate(paramValues);
+    }
+
     public OpProduct(Table table) {
+        this(table, false);
+    }
+
+    public OpProduct(Table table, boolean virtual) {
         this.table = table;
 
         this.whereLambda = null;
         this.whereParameterPaths = null;
+
+        // Key columns get virtual data during evaluation
+        this.virtual = virtual;
+        if(!this.virtual) this.materialize();
     }
 
     public OpProduct(Table table, EvalCalculate lambda, ColumnPath... paths) {
@@ -197,6 +451,8 @@ public class OpProduct implements Operation {
 
         this.whereLambda = lambda;
         this.whereParameterPaths = Arrays.asList(paths);
+
+        this.materialize();
     }
 
     public OpProduct(Table table, EvalCalculate lambda, Column... columns) {
@@ -206,5 +462,7 @@ public class OpProduct implements Operation {
         for(int i=0; i<columns.length; i++) {
             this.whereParameterPaths.add(new ColumnPath(columns[i]));
         }
+
+        this.materialize();
     }
 }
@@ -1,11 +1,15 @@
 package bistro.core.operations;
 
+import java.math.BigInteger;
 import java.time.*;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import bistro.core.*;
+import bistro.core.data.VirtualColumnData;
 
 public class OpRange implements Operation {
 
@@ -28,6 +32,10 @@ public class OpRange implements Operation {
     Object start; // Integer value means (minimum, inclusive) interval number
     Object end; // Integer value means (maximum, exclusive) interval number
 
+    // Virtual range table does not store interval values. Record ids are equal to interval numbers and values are computed from ids.
+    // Records are appended (without storing anything in the range columns) only up to the largest interval which is really used.
+    boolean virtual;
+
     // Options for interpreting an exact position of the interval and the corresponding conditions
     Object closed; // Which end is closed: left (default) or right
     Object label; // Does the point represents left end (default) or right end
@@ -43,124 +51,105 @@ public class OpRange implements Operation {
         return columns.get(1);
     }
 
-    protected Object getNext(Object value) {
-        Object nextValue = null;
-
-        if(this.rangeType.equals("Number")) {
-            nextValue = (Double)value + (Double)this.period;
-        }
-        else if(this.rangeType.equals("Duration")) {
-            nextValue = ((Instant)value).plus((Duration)this.period);
-        }
-        else if(this.rangeType.equals("Period")) {
-            nextValue = ((LocalDate)value).plus((Period)this.period);
-        }
-
-        return nextValue;
-    }
-
-    // Get interval value and number the specified value belongs to
-    protected Object[] getInterval(Object value) {
-
+    // Value (left border) of the interval with the specified number
+    // Each interval is computed from the origin (rather than from the previous interval) so that calendar periods do not accumulate day-of-month adjustments
+    protected Object getIntervalValue(long intervalNo) {
         Object intervalValue = null;
-        Long intervalNo = -1L;
 
         if(this.rangeType.equals("Number")) {
-            intervalNo = (long) Math.floor( ((double)value - (double)this.origin) / (double)this.period);
             intervalValue = (double)this.origin + intervalNo * (double)this.period;
         }
-        else if(this.rangeType.equals("Duration")) {
-            if(((Instant)value).isBefore((Instant)this.origin)) {
-                ; // Not found
-            }
-            else {
-                Instant pos = (Instant)this.origin;
-                Instant next;
-                for(intervalNo = 0L; intervalNo < (Long)this.end; intervalNo++) {
-                    next = pos.plus((Duration)this.period);
-                    if(next.isAfter((Instant)value)) {
-                        break;
-                    }
-                    pos = next;
+        else {
+            try { // The value might not be representable (many intervals or large periods)
+                if(this.rangeType.equals("Duration")) {
+                    intervalValue = ((Instant)this.origin).plus(((Duration)this.period).multipliedBy(intervalNo));
                 }
-                intervalValue = pos;
-            }
-        }
-        else if(this.rangeType.equals("Period")) {
-            if(((LocalTime)value).isBefore((LocalTime)this.origin)) {
-                ; // Not found
-            }
-            LocalDate pos = (LocalDate)this.origin;
-            LocalDate next;
-            for(intervalNo = 0L; intervalNo < (Long)this.end; intervalNo++) {
-                next = pos.plus((Period)this.period);
-                if(next.isAfter((LocalDate)value)) {
-                    break;
+                else if(this.rangeType.equals("Period")) { // Fields are multiplied as longs because interval numbers might not fit into int (as in Period.multipliedBy)
+                    Period period = (Period)this.period;
+                    intervalValue = ((LocalDate)this.origin)
+                            .plusMonths(Math.multiplyExact(period.toTotalMonths(), intervalNo))
+                            .plusDays(Math.multiplyExact((long)period.getDays(), intervalNo));
                 }
-                pos = next;
             }
-            intervalValue = pos;
+            catch(ArithmeticException | DateTimeException e) {
+                throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Range interval " + intervalNo + " is out of the range of values.") );
+            }
         }
 
-        Object[] ret = new Object[] { intervalValue, intervalNo };
-
-        return ret;
+        return intervalValue;
     }
 
-    // Check if the value is within the specified interval [start, end)
-    protected boolean inInterval(Object value, Object intervalValue) {
+    // Maximum number of single steps for adjusting an estimated interval number
+    private static int MAX_ADJUSTMENTS = 4;
 
-        if(this.rangeType.equals("Number")) {
-            double nextValue = (Double)intervalValue + (Double)this.period;
+    // Number of the interval the specified value belongs to. It is computed arithmetically without iterating through intervals.
+    // Negative number means that the value is before the origin, after the last interval or it is not valid (null, NaN or wrong type).
+    protected long getIntervalNo(Object value) {
 
-            if((double)value >= (double)intervalValue && (double)value < nextValue) {
-                return true;
-            }
+        long intervalNo = -1;
+        long intervalCount = ((Number)this.end).longValue();
+        if(intervalCount <= 0) return -1;
+
+        if(this.rangeType.equals("Number")) {
+            if(!(value instanceof Number)) return -1;
+            double val = ((Number)value).doubleValue();
+            if(Double.isNaN(val)) return -1;
+            intervalNo = (long) Math.floor( (val - (double)this.origin) / (double)this.period); // Might be wrong by one because of rounding
         }
         else if(this.rangeType.equals("Duration")) {
-            Instant nextValue = ((Instant)intervalValue).plus((Duration)this.period);
-
-            if(((Instant)value).equals((Instant)intervalValue)) {
-                return true;
+            if(!(value instanceof Instant)) return -1;
+            Duration duration = Duration.between((Instant)this.origin, (Instant)value);
+            Duration period = (Duration)this.period;
+            try {
+                intervalNo = Math.floorDiv(duration.toNanos(), period.toNanos());
             }
-            if(((Instant)value).isAfter((Instant)intervalValue) && ((Instant)value).isBefore(nextValue)) {
-                return true;
+            catch(ArithmeticException e) { // Too long for long nanoseconds. Compute exactly from seconds and nanos
+                BigInteger[] qr = toNanos(duration).divideAndRemainder(toNanos(period));
+                BigInteger q = qr[1].signum() < 0 ? qr[0].subtract(BigInteger.ONE) : qr[0];
+                if(q.signum() < 0 || q.compareTo(BigInteger.valueOf(intervalCount)) >= 0) return -1;
+                intervalNo = q.longValue();
             }
+            if(intervalNo < 0 || intervalNo >= intervalCount) return -1; // Exact number
         }
         else if(this.rangeType.equals("Period")) {
-            LocalDate nextValue = ((LocalDate)intervalValue).plus((Period)this.period);
-
-            if(((LocalDate)value).equals((LocalDate)intervalValue)) {
-                return true;
+            if(!(value instanceof LocalDate)) return -1;
+            LocalDate origin = (LocalDate)this.origin;
+            Period period = (Period)this.period;
+            if(period.getDays() == 0) { // Months and years
+                intervalNo = Math.floorDiv(ChronoUnit.MONTHS.between(origin, (LocalDate)value), period.toTotalMonths());
+            }
+            else if(period.toTotalMonths() == 0) { // Days
+                intervalNo = Math.floorDiv(ChronoUnit.DAYS.between(origin, (LocalDate)value), (long)period.getDays());
             }
-            if(((LocalDate)value).isAfter((LocalDate)intervalValue) && ((LocalDate)value).isBefore(nextValue)) {
-                return true;
+            else { // Mixed period. Estimate using the average month length (calendar months deviate from it only by few days)
+                double days = period.toTotalMonths() * 30.436875 + period.getDays();
+                intervalNo = (long) Math.floor(ChronoUnit.DAYS.between(origin, (LocalDate)value) / days);
             }
         }
 
-        return false;
-    }
+        // An estimate close to the borders might still be within the range after adjustment
+        if(intervalNo < -MAX_ADJUSTMENTS || intervalNo >= intervalCount + MAX_ADJUSTMENTS) return -1;
+        intervalNo = Math.min(Math.max(intervalNo, 0), intervalCount - 1);
+
+        // Adjust the estimate (variable month lengths or rounding) so that the value is within [start, end) of the interval
+        // The estimate is at most few intervals away so the number of steps is limited
+        for(int i = 0; i < MAX_ADJUSTMENTS; i++) {
+            if(this.compare(this.getIntervalValue(intervalNo), value) > 0) intervalNo--;
+            else if(this.compare(this.getIntervalValue(intervalNo + 1), value) <= 0) intervalNo++;
+            else break;
+            if(intervalNo < 0 || intervalNo >= intervalCount) return -1;
+        }
 
-    // Check if the value is before specified interval start [start, end)
-    protected boolean beforeInterval(Object value, Object intervalValue) {
+        return intervalNo;
+    }
 
-        if(this.rangeType.equals("Number")) {
-            if((double)value < (double)intervalValue) {
-                return true;
-            }
-        }
-        else if(this.rangeType.equals("Duration")) {
-            if(((Instant)value).isBefore((Instant)intervalValue)) {
-                return true;
-            }
-        }
-        else if(this.rangeType.equals("Period")) {
-            if(((LocalDate)value).isBefore((LocalDate)intervalValue)) {
-                return true;
-            }
-        }
+    private static BigInteger toNanos(Duration duration) {
+        return BigInteger.valueOf(duration.getSeconds()).multiply(BigInteger.valueOf(1_000_000_000L)).add(BigInteger.valueOf(duration.getNano()));
+    }
 
-        return false;
+    @SuppressWarnings("unchecked")
+    private int compare(Object intervalValue, Object value) {
+        return ((Comparable<Object>)intervalValue).compareTo(value);
     }
 
     void validate() {
@@ -204,94 +193,81 @@ public class OpRange implements Operation {
     @Override
     public void evaluate() {
 
+        // Intervals are numbered from the first record and hence the existing population cannot be continued
+        this.table.getData().reset();
+
+        // Virtual intervals are appended only when they are used
+        if(this.virtual) return;
+
         // Start from 0 and continue iterating till the end is detected
-        Object intervalValue = this.origin;
-        long intervalNo = 0;
-        while(true) {
+        this.append(0, (long)this.end);
+    }
 
-            // Check constraint: dif the current interval is end
-            if(intervalNo >= (long)this.end) {
-                break;
-            }
+    // Append intervals with the specified numbers [from, to) and return the id of the last one
+    protected long append(long fromNo, long toNo) {
+        if(this.virtual) { // Values are not stored
+            return this.table.getData().add(toNo - fromNo).end - 1;
+        }
 
+        long id = -1;
+        for(long intervalNo = fromNo; intervalNo < toNo; intervalNo++) {
             // Append a new interval to the table
-            long id = this.table.getData().add();
-            this.rangeColumn.getData().setValue(id, intervalValue);
+            id = this.table.getData().add();
+            this.rangeColumn.getData().setValue(id, this.getIntervalValue(intervalNo));
             if(this.intervalColumn != null) {
                 this.intervalColumn.getData().setValue(id, intervalNo);
             }
+        }
+        return id;
+    }
 
-            intervalValue = this.getNext(intervalValue); // Iterate the value
-            intervalNo++; // Iterate interval number
+    // Number of the interval stored in the first record of the table
+    // Intervals in the table are supposed to be ordered and have consecutive numbers
+    protected long getFirstNo(Range idRange) {
+        if(this.virtual) {
+            return idRange.start;
+        }
+        if(this.intervalColumn != null) {
+            return ((Number)this.intervalColumn.getData().getValue(idRange.start)).longValue();
         }
+        return this.getIntervalNo(this.rangeColumn.getData().getValue(idRange.start));
     }
 
-    // Append a new interval the specified value belongs to as well as all intervals between the last one
-    // Note that we cannot append old dates before the origin (because intervals are supposed to be ordered)
-    protected long add(Object value) {
+    // Return id of the record representing the interval with this number or -1 if it does not exist
+    // If requested, then append this interval as well as all intervals between the last existing interval
+    // Note that we cannot append old intervals before the first existing interval (because intervals are supposed to be ordered)
+    protected long findId(long intervalNo, boolean append) {
 
         // Constraint
         long intervalCount = ((Number)this.end).longValue();
+        if(intervalNo < 0 || intervalNo >= intervalCount) return -1;
 
-        Object intervalValue = this.origin;
-        long intervalNo = 0;
-        long id = -1;
-        if(this.table.getData().getLength() == 0) { // Special case: empty table (no interval to append after)
-
-            Object[] interval = this.getInterval(value);
-            intervalValue = interval[0];
-            intervalNo = (Long)interval[1];
-
-            // Add interval if it satisfies constraints
-            if(intervalNo >= 0 && intervalNo < intervalCount) {
-                // Append a new interval to the table
-                id = this.table.getData().add();
-                this.rangeColumn.getData().setValue(id, intervalValue);
-                if(this.intervalColumn != null) {
-                    this.intervalColumn.getData().setValue(id, intervalNo);
-                }
-            }
-        }
-        else { // Append new interval(s) after an existing interval
+        Range idRange = this.table.getData().getIdRange();
 
-            // Find initial (previous) interval
-            id = this.table.getData().getIdRange().end - 1;
-            if(this.intervalColumn != null) {
-                intervalNo = (long) this.intervalColumn.getData().getValue(id);
-            }
+        if(this.virtual) { // All intervals exist and ids are interval numbers so the table is extended by links as well
+            if(intervalNo < idRange.start) return -1;
+            if(intervalNo >= idRange.end) this.append(idRange.end, intervalNo + 1);
+            return intervalNo;
+        }
 
-            intervalValue = this.rangeColumn.getData().getValue(id);
-            if(this.beforeInterval(value, intervalValue)) { // This may happen if an old time is appended - we cannot append older intervals
-                return id;
-            }
+        if(idRange.getLength() == 0) { // Special case: empty table (no interval to append after)
+            if(!append) return -1;
+            return this.append(intervalNo, intervalNo + 1);
+        }
 
-            while(true) {
-                // If the current interval covers the value then break
-                if(this.inInterval(value, intervalValue)) {
-                    break;
-                }
+        long firstNo = this.getFirstNo(idRange);
+        long lastNo = firstNo + idRange.getLength() - 1;
 
-                // Iterate to the next interval
-                intervalValue = this.getNext(intervalValue);
-                intervalNo++;
-
-                // Add interval if it satisfies constraints
-                if(intervalNo >= 0 && intervalNo < intervalCount) {
-                    // Append a new interval to the table
-                    id = this.table.getData().add();
-                    this.rangeColumn.getData().setValue(id, intervalValue);
-                    if(this.intervalColumn != null) {
-                        this.intervalColumn.getData().setValue(id, intervalNo);
-                    }
-                }
-                else {
-                    id = -1; // Does not satisfies constraints
-                    break;
-                }
-            }
+        if(intervalNo < firstNo) { // No insertion possible before existing intervals
+            return -1;
+        }
+        else if(intervalNo <= lastNo) { // Existing interval
+            return idRange.start + (intervalNo - firstNo);
+        }
+        else { // After last interval
+            if(!append) return -1;
+            return this.append(lastNo + 1, intervalNo + 1);
         }
-
-        return id; // Return last appended interval - not necessarily that covering the value
     }
 
     // Use inequality for finding interval this object belongs to and return id of the record representing this interval
@@ -299,57 +275,39 @@ public class OpRange implements Operation {
 
         // Range tables do not have nulls or NaNs
         if(value == null) return -1;
-        if(!(value instanceof Number || value instanceof Instant || value instanceof LocalDate)) {
-            return -1; // Wrong use
-        }
 
-        Range idRange = this.table.getData().getIdRange();
-
-        long index = this.rangeColumn.getData().findSorted(value); // Data in a range table is supposed to be sorted
+        return this.findId(this.getIntervalNo(value), append);
+    }
 
-        if(index >= 0) { // If positive, then it is id of the found value
-            ;
-        }
-        if(index < 0) { // If negatvie, then not found, and (-index-1) is id of the nearest greater value
-            index = -index - 1; // Insertion index. Id of the next greater value
+    // Find intervals for many values and store their ids in the output array
+    // The position of the existing intervals is determined only once rather than for each value
+    protected void findRange(Object[] values, int length, long[] ids, boolean append) {
 
-            if(idRange.getLength() == 0) { // Special case: no elements
-                // Proj: insert interval corresponding to the value as the very first interval in the range
-                index = -1;
-            }
-            else if(index == idRange.start) { // Before first element. Insertion in range not possible (range is supposed to be monotonically growing)
-                // Proj: no insertion possible before existing intervals
-                index = -1;
-            }
-            else if(index < idRange.end) { // Between two raster points of an existing interval
-                // Proj: no insertion needed - link to the existing interval
-                index = index - 1; // Closest left border
-            }
-            else if(index >= idRange.end) { // After last element
+        Range idRange = this.table.getData().getIdRange();
+        long firstNo = idRange.getLength() == 0 ? 0 : this.getFirstNo(idRange);
 
-                Object lastValue = this.rangeColumn.getData().getValue(idRange.end-1);
+        for(int k = 0; k < length; k++) {
+            long intervalNo = values[k] == null ? -1 : this.getIntervalNo(values[k]);
 
-                boolean inInterval = this.inInterval(value, lastValue);
-                if(inInterval) {
-                    // Proj: no insertion needed - link to the existing interval
-                    index = index - 1; // Closest left border
-                }
-                else { // Too high value
-                    // Proj: insert interval corresponding to the value as well as all intervals before the last existing interval
-                    index = -1;
-                }
+            if(intervalNo >= firstNo && intervalNo < firstNo + idRange.getLength()) { // Existing interval
+                ids[k] = idRange.start + (intervalNo - firstNo);
+                continue;
             }
 
-            // If not found, and can be appended, and requested, then append the value (interval and all previous intevals before the last existing one)
-            if(index < 0 && append) {
-                index = this.add(value); // Add one interval as well as intervals between the last one
+            ids[k] = this.findId(intervalNo, append);
+
+            if((append || this.virtual) && ids[k] >= 0) { // New intervals might have been appended
+                idRange = this.table.getData().getIdRange();
+                firstNo = this.getFirstNo(idRange);
             }
         }
-
-        return index;
     }
 
     public OpRange(Table table, Object origin, Object period, Long length) {
+        this(table, origin, period, length, false);
+    }
+
+    public OpRange(Table table, Object origin, Object period, Long length, boolean virtual) {
         this.table = table;
 
         // Find columns to be set during population
@@ -378,8 +336,31 @@ public class OpRange implements Operation {
             throw( new BistroException(BistroErrorCode.DEFINITION_ERROR, "Table operation error.", "Cannot determine range data type. Use appropriate data types in parameters.")) ;
         }
 
+        // Intervals are computed arithmetically so the period must move forward
+        if(this.rangeType.equals("Number") && !((double)this.period > 0)
+                || this.rangeType.equals("Duration") && (((Duration)this.period).isNegative() || ((Duration)this.period).isZero())
+                || this.rangeType.equals("Period") && (((Period)this.period).isNegative() || ((Period)this.period).isZero())) {
+            throw( new BistroException(BistroErrorCode.DEFINITION_ERROR, "Table operation error.", "Range period must be positive.")) ;
+        }
+
         this.start = (Long) 0L;
         this.end = (Long) length;
 
+        // Range columns either compute their values or store them
+        this.virtual = virtual;
+        Range idRange = this.table.getData().getIdRange();
+        if(this.virtual) {
+            this.rangeColumn.setData(new VirtualColumnData(id -> this.getIntervalValue(id), idRange.start, idRange.end));
+            if(this.intervalColumn != null) {
+                this.intervalColumn.setData(new VirtualColumnData(id -> id, idRange.start, idRange.end));
+            }
+        }
+        else {
+            for(Column col : Arrays.asList(this.rangeColumn, this.intervalColumn)) {
+                if(col == null || !(col.getData() instanceof VirtualColumnData)) continue;
+                col.setData(col.getStorageFactory().createColumnData(col, idRange.start, idRange.end));
+            }
+        }
+
     }
 }
@@ -1,6 +1,7 @@
 package bistro.core.operations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import bistro.core.*;
@@ -37,6 +38,10 @@ public class OpRoll implements Operation {
     EvalRoll lambda;
     ColumnPath[] paths;
 
+    // Incremental mode: facts are added to the window when it moves over them and subtracted when it leaves them
+    EvalAccumulate adder;
+    EvalAccumulate subtractor;
+
     @Override
     public OperationType getOperationType() {
         return OperationType.ROLL;
@@ -68,6 +73,11 @@ public class OpRoll implements Operation {
     @Override
     public void evaluate() {
 
+        if(this.adder != null) {
+            this.evalIncremental();
+            return;
+        }
+
         this.column.getData().setValue(); // Initialize to default value
 
         Table mainTable = this.column.getInput(); // Loop/scan table
@@ -140,6 +150,138 @@ public class OpRoll implements Operation {
 
     }
 
+    protected void evalIncremental() {
+
+        Table mainTable = this.column.getInput();
+
+        Range mainRange = mainTable.getData().getIdRange();
+
+        //
+        // Determine the scope of dirtiness
+        //
+
+        boolean fullScope = false;
+
+        if(!fullScope) {
+            if(this.column.getDefinitionChangedAt() > this.column.getData().getChangedAt()) { // Definition has changes
+                fullScope = true;
+            }
+        }
+
+        List<Range> factRanges = null; // Added facts and facts with changed parameters
+        if(!fullScope) {
+            factRanges = ChangeScope.getRanges(mainTable, Arrays.asList(this.paths));
+            if(factRanges == null) { // Changes cannot be mapped to facts
+                fullScope = true;
+            }
+        }
+
+        if(!fullScope && this.distancePath != null) { // Changed distances change windows
+            for(Column col : this.distancePath.columns) {
+                if(ChangeScope.isChanged(col)) fullScope = true;
+            }
+        }
+
+        if(fullScope) {
+            this.evalWindows(mainRange, mainRange);
+            this.column.getData().setChanged(); // All existing outputs might have changed
+            return;
+        }
+
+        List<Range> scopes = new ArrayList<>();
+
+        // Old rows the past windows of which contained the removed facts (they are still readable until changes are reset)
+        if(mainTable.getData().getRemovedRange().getLength() > 0) {
+            long end = mainRange.start;
+            while(end < mainRange.end && computeDistance(mainRange.start - 1, end) < this.sizePast) {
+                end++;
+            }
+            scopes.add(new Range(mainRange.start, end));
+        }
+
+        // Rows the windows of which contain added or changed facts
+        for(Range facts : factRanges) {
+            long start = facts.start;
+            while(start > mainRange.start && computeDistance(start - 1, facts.start) <= this.sizeFuture) {
+                start--;
+            }
+            long end = facts.end;
+            while(end < mainRange.end && computeDistance(facts.end - 1, end) < this.sizePast) {
+                end++;
+            }
+            scopes.add(new Range(start, end));
+        }
+
+        //
+        // Update dirty windows
+        //
+
+        for(Range scope : ChangeScope.merge(scopes, mainRange)) {
+            this.evalWindows(scope, mainRange);
+        }
+    }
+
+    // Compute aggregates of the specified rows by moving the window forward and adding/subtracting only the facts which enter/leave it
+    protected void evalWindows(Range scope, Range mainRange) {
+        if(scope.getLength() <= 0) return;
+
+        Object[] paramValues = new Object[this.paths.length];
+        Object defaultValue = this.column.getData().getDefaultValue();
+
+        // Initial window [min,max) of the first row
+        long i = scope.start;
+        long min_id = i + 1;
+        while(min_id > mainRange.start && computeDistance(min_id - 1, i) < this.sizePast) {
+            min_id--;
+        }
+        long max_id = min_id;
+
+        Object aggregate = defaultValue;
+
+        for( ; i < scope.end; i++) {
+
+            // Add facts entering the window at its future border
+            for( ; max_id < mainRange.end; max_id++) {
+                if(computeDistance(i, max_id) > this.sizeFuture) break; // Outside window
+                aggregate = this.update(aggregate, this.adder, max_id, paramValues);
+            }
+
+            // Subtract facts leaving the window at its past border
+            for( ; min_id < max_id && min_id <= i; min_id++) {
+                if(computeDistance(min_id, i) < this.sizePast) break; // Inside window
+                if(this.subtractor != null) {
+                    aggregate = this.update(aggregate, this.subtractor, min_id, paramValues);
+                }
+            }
+
+            if(this.subtractor == null) { // Facts cannot be subtracted so the whole window is aggregated again
+                aggregate = defaultValue;
+                for(long fact_id = min_id; fact_id < max_id; fact_id++) {
+                    aggregate = this.update(aggregate, this.adder, fact_id, paramValues);
+                }
+            }
+
+            this.column.getData().setValue(i, aggregate);
+        }
+    }
+
+    private Object update(Object aggregate, EvalAccumulate lambda, long fact_id, Object[] paramValues) {
+
+        for(int p=0; p<this.paths.length; p++) {
+            paramValues[p] = this.paths[p].getValue(fact_id);
+        }
+
+        try {
+            return lambda.evaluate(aggregate, paramValues);
+        }
+        catch(BistroException e) {
+            throw(e);
+        }
+        catch(Exception e) {
+            throw( new BistroException(BistroErrorCode.EVALUATION_ERROR, e.getMessage(), "Error executing user-defined function.") );
+        }
+    }
+
     public OpRoll(Column column, ColumnPath distancePath, double sizePast, double sizeFuture, EvalRoll lambda, ColumnPath[] paths) {
         this.column = column;
 
@@ -161,4 +303,18 @@ public class OpRoll implements Operation {
         }
     }
 
+    public OpRoll(Column column, ColumnPath distancePath, double sizePast, double sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, ColumnPath[] paths) {
+        this(column, distancePath, sizePast, sizeFuture, (EvalRoll)null, paths);
+
+        this.adder = adder;
+        this.subtractor = subtractor;
+    }
+
+    public OpRoll(Column column, Column distanceColumn, double sizePast, double sizeFuture, EvalAccumulate adder, EvalAccumulate subtractor, Column[] columns) {
+        this(column, distanceColumn, sizePast, sizeFuture, (EvalRoll)null, columns);
+
+        this.adder = adder;
+        this.subtractor = subtractor;
+    }
+
 }
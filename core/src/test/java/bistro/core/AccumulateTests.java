@@ -140,4 +140,129 @@ public class AccumulateTests {
         assertEquals(0.0, ta.getData().getValue(2));
     }
 
+    @Test
+    public void accuRedefineTest() { // New definition accumulates all facts again
+        Schema s = this.createSchema();
+        Table t = s.getTable("T");
+        Table t2 = s.getTable("T2");
+        Column t2g = t2.getColumn("G");
+
+        Column ta = t.getColumn("A");
+        ta.getData().setDefaultValue(0.0);
+        ta.accumulate(t2g, (a,p) -> ((Number)a).doubleValue() + ((Number)p[0]).doubleValue(), null, t2.getColumn("Id"));
+        s.evaluate();
+        assertEquals(10.0, ta.getData().getValue(0));
+
+        // Count instead of sum. Facts have not changed but previous aggregates are not used
+        ta.accumulate(t2g, (a,p) -> ((Number)a).doubleValue() + 1.0, null, t2.getColumn("Id"));
+        s.evaluate();
+        assertEquals(2.0, ta.getData().getValue(0));
+        assertEquals(1.0, ta.getData().getValue(1));
+        assertEquals(0.0, ta.getData().getValue(2));
+
+        // Appended facts are still accumulated incrementally and dependents see the updated groups
+        Column tb = s.createColumn("B", t);
+        tb.calculate(p -> (Double)p[0] * 10.0, ta);
+        s.evaluate();
+        t2.getData().add();
+        t2.getColumn("Id").getData().setValue(4, 15);
+        s.evaluate();
+        assertEquals(2.0, ta.getData().getValue(0));
+        assertEquals(1.0, ta.getData().getValue(2));
+        assertEquals(10.0, tb.getData().getValue(2));
+    }
+
+    @Test
+    public void accuWindowTest() {
+        Schema s = new Schema("My Schema");
+
+        // Group table with one group
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        t.getData().add();
+
+        // Fact table with bounded storage (sliding window of 3 records)
+        Table f = s.createTable("F", new bistro.core.data.RingStorageFactory(4));
+        Column fm = s.createColumn("M", f);
+        Column fg = s.createColumn("G", f, t);
+        assertTrue(fm.getData() instanceof bistro.core.data.RingColumnData);
+
+        ta.getData().setDefaultValue(0.0);
+        ta.accumulate(
+                fg,
+                (a,p) -> (Double)a + (Double)p[0],
+                (a,p) -> (Double)a - (Double)p[0],
+                fm
+        );
+
+        for(long i = 0; i < 20; i++) {
+            long id = f.getData().add();
+            fm.getData().setValue(id, (double)i);
+            fg.getData().setValue(id, 0L);
+            if(f.getData().getLength() > 3) f.getData().remove();
+
+            s.evaluate();
+        }
+
+        assertEquals(17.0 + 18.0 + 19.0, ta.getData().getValue(0));
+        assertEquals(4, ((bistro.core.data.RingColumnData)fm.getData()).getCapacity());
+    }
+
+    @Test
+    public void accuParallelTest() {
+        Schema s = new Schema("My Schema");
+
+        // Groups
+        Table g = s.createTable("G");
+        g.getData().add(100);
+        Column gs = s.createColumn("Sum", g);
+        gs.getData().setDefaultValue(0.0); // Identity element of the combiner
+        Column gc = s.createColumn("Count", g);
+        gc.getData().setDefaultValue(0.0);
+
+        // Facts
+        Table f = s.createTable("F");
+        Column fg = s.createColumn("G", f, g);
+        Column fm = s.createColumn("M", f);
+        long count = 100000;
+        f.getData().add(count);
+        for(long i = 0; i < count; i++) {
+            fg.getData().setValue(i, i % 100);
+            fm.getData().setValue(i, 1.0);
+        }
+        fg.getData().setValue(7, -1L); // No group
+
+        // Facts are accumulated in parallel into partial sums
+        gs.accumulate(
+                fg,
+                (a,p) -> (Double)a + (Double)p[0],
+                null,
+                (a1,a2) -> (Double)a1 + (Double)a2,
+                fm
+        );
+        gc.accumulate(
+                fg,
+                (a,p) -> (Double)a + 1.0,
+                null,
+                (a1,a2) -> (Double)a1 + (Double)a2
+        );
+
+        s.evaluate();
+
+        assertEquals(1000.0, gs.getData().getValue(0));
+        assertEquals(999.0, gs.getData().getValue(7));
+        assertEquals(1000.0, gc.getData().getValue(99));
+
+        // Incremental: new facts are added to the existing aggregates
+        Range added = f.getData().add(count);
+        for(long i = added.start; i < added.end; i++) {
+            fg.getData().setValue(i, 0L);
+            fm.getData().setValue(i, 2.0);
+        }
+        s.evaluate();
+
+        assertEquals(1000.0 + 2.0 * count, gs.getData().getValue(0));
+        assertEquals(1000.0, gs.getData().getValue(1));
+    }
+
 }
@@ -1,10 +1,14 @@
 package bistro.core;
 
+import bistro.core.data.LongColumnData;
+import bistro.core.data.PrimitiveStorageFactory;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import bistro.core.operations.OpCalculate;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -85,4 +89,234 @@ public class CalculateTests {
         assertEquals(13.0, (Double) tb.getData().getValue(2), Double.MIN_VALUE);
     }
 
+    @Test
+    public void parallelCalcTest() {
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new PrimitiveStorageFactory()); // Numbers are stored in primitive arrays
+        Table d = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, d);
+        Column tb = s.createColumn("B", t, d);
+        Column tc = s.createColumn("C", t);
+
+        long count = 100000;
+        t.getData().add(count);
+        for(long i = 0; i < count; i++) {
+            ta.getData().setValue(i, (double)i);
+        }
+        ta.getData().setValue(5, null);
+
+        // Lambda is declared thread-safe so the range is evaluated in parallel
+        tb.calculate(p -> p[0] == null ? null : (Double)p[0] * 2.0, true, ta);
+        tc.calculate(p -> p[0] == null ? null : (Double)p[0] + 1.0, true, ta);
+        s.evaluate();
+
+        for(long i = 0; i < count; i++) {
+            if(i == 5) continue;
+            assertEquals(2.0 * i, (Double)tb.getData().getValue(i), Double.MIN_VALUE);
+            assertEquals(i + 1.0, (Double)tc.getData().getValue(i), Double.MIN_VALUE);
+        }
+        assertEquals(null, tb.getData().getValue(5));
+        assertEquals(null, tc.getData().getValue(5));
+
+        // Changed ids written by parallel workers are registered
+        ta.getData().setValue(7, 1.0);
+        ta.getData().setValue(70000, 1.0);
+        t.getData().add(count);
+        for(long i = count; i < 2 * count; i++) {
+            ta.getData().setValue(i, (double)i);
+        }
+        t.getData().resetChanged(); // Only changed parameters determine the scope
+        tb.evaluate();
+        assertEquals(Arrays.asList(new Range(7, 8), new Range(70000, 70001), new Range(count, 2 * count)), tb.getData().getChangedRanges());
+        assertEquals(2.0, (Double)tb.getData().getValue(70000), Double.MIN_VALUE);
+        assertEquals(2.0 * (2 * count - 1), (Double)tb.getData().getValue(2 * count - 1), Double.MIN_VALUE);
+
+        // Errors in workers are reported for the column
+        tb.calculate(p -> (Double)p[0] > 50000.0 ? ((String)p[0]).length() : 0.0, true, ta);
+        s.evaluate();
+        assertEquals(1, tb.getErrors().size());
+    }
+
+    @Test
+    public void changedRowsCalcTest() {
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        Column tb = s.createColumn("B", t);
+        Column tc = s.createColumn("C", t);
+
+        t.getData().add(10);
+        for(long i = 0; i < 10; i++) {
+            ta.getData().setValue(i, (double)i);
+        }
+
+        long[] calls = new long[1];
+        tb.calculate(p -> { calls[0]++; return (Double)p[0] * 2.0; }, ta);
+        tc.calculate(p -> { calls[0]++; return (Double)p[0] + 1.0; }, tb);
+        s.evaluate();
+        assertEquals(20, calls[0]);
+
+        // Only changed and added rows are evaluated and their changes are propagated to dependents
+        calls[0] = 0;
+        ta.getData().setValue(3, 30.0);
+        t.getData().add();
+        ta.getData().setValue(10, 10.0);
+        s.evaluate();
+
+        assertEquals(4, calls[0]);
+        assertEquals(60.0, tb.getData().getValue(3));
+        assertEquals(61.0, tc.getData().getValue(3));
+        assertEquals(21.0, tc.getData().getValue(10));
+        assertEquals(9.0, tc.getData().getValue(4));
+
+        // Nothing to evaluate
+        calls[0] = 0;
+        s.evaluate();
+        assertEquals(0, calls[0]);
+    }
+
+    @Test
+    public void fullScopeCalcTest() { // Outputs re-evaluated for all ids are marked as changed for dependents
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t);
+        Column tb = s.createColumn("B", t);
+        Column tc = s.createColumn("C", t);
+
+        Table g = s.createTable("G");
+        Column gk = s.createColumn("K", g);
+        Column gv = s.createColumn("V", g);
+        Column tl = s.createColumn("L", t, g);
+        Column td = s.createColumn("D", t);
+
+        g.getData().add(2);
+        gk.getData().setValue(0, 1.0);
+        gk.getData().setValue(1, 2.0);
+        gv.getData().setValue(0, "x");
+        gv.getData().setValue(1, "y");
+
+        t.getData().add(3);
+        for(long i = 0; i < 3; i++) {
+            ta.getData().setValue(i, (double)i);
+        }
+
+        tb.calculate(p -> (Double)p[0] * 2.0, ta);
+        tc.calculate(p -> (Double)p[0] + 1.0, tb);
+        tl.link(new Column[] {ta}, gk);
+        td.calculate(p -> p[0] == null ? null : ((Long)p[0] == -1 ? "-" : "+"), tl);
+        s.evaluate();
+
+        assertEquals(5.0, tc.getData().getValue(2));
+        assertEquals("+", td.getData().getValue(1));
+        assertEquals("-", td.getData().getValue(0));
+
+        // Appended records are added ids rather than changed outputs
+        t.getData().add();
+        ta.getData().setValue(3, 3.0);
+        t.getData().resetChanged();
+        ta.getData().resetChanged();
+        tb.getData().resetChanged();
+        ta.getData().setChanged(new Range(3, 4));
+        tb.evaluate();
+        assertEquals(Arrays.asList(new Range(3, 4)), tb.getData().getChangedRanges());
+        s.evaluate();
+
+        // New definition re-evaluates all ids and all dependents
+        tb.calculate(p -> (Double)p[0] * 3.0, ta);
+        s.evaluate();
+        assertEquals(1.0, tc.getData().getValue(0));
+        assertEquals(7.0, tc.getData().getValue(2));
+        assertEquals(10.0, tc.getData().getValue(3));
+
+        // New link definition re-evaluates all dependents of the link
+        tl.link(new Column[] {tb}, gk);
+        s.evaluate();
+        assertEquals("-", td.getData().getValue(0));
+        assertEquals("-", td.getData().getValue(1));
+        assertEquals("-", td.getData().getValue(2));
+        tl.link(new Column[] {ta}, gk);
+        s.evaluate();
+        assertEquals("+", td.getData().getValue(1));
+        assertEquals("+", td.getData().getValue(2));
+    }
+
+    @Test
+    public void vectorCalcTest() {
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new PrimitiveStorageFactory()); // Numbers are stored in primitive arrays
+        Table d = s.createTable("Double");
+        Table l = s.createTable("Long");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, d);
+        Column tb = s.createColumn("B", t);
+        Column tc = s.createColumn("C", t, d);
+        Column td = s.createColumn("D", t);
+        Column te = s.createColumn("E", t, l);
+
+        long count = 3000; // Several batches
+        t.getData().add(count);
+        for(long i = 0; i < count; i++) {
+            ta.getData().setValue(i, (double)i);
+            tb.getData().setValue(i, 2L);
+        }
+        ta.getData().setValue(5, null);
+
+        // Lambda processes batches of primitive values
+        tc.calculate((p, out, length) -> {
+            for(int k = 0; k < length; k++) out[k] = p[0][k] * p[1][k];
+        }, ta, tb);
+        td.calculate((p, out, length) -> {
+            for(int k = 0; k < length; k++) out[k] = p[0][k] + 1.0;
+        }, tc);
+        te.calculate((p, out, length) -> { // Outputs are written to primitive longs
+            for(int k = 0; k < length; k++) out[k] = p[0][k] / 4.0;
+        }, tc);
+        s.evaluate();
+
+        assertEquals(20.0, tc.getData().getValue(10));
+        assertEquals(5998.0, tc.getData().getValue(2999));
+        assertEquals(null, tc.getData().getValue(5));
+        assertEquals(21.0, td.getData().getValue(10));
+        assertEquals(null, td.getData().getValue(5));
+        assertTrue(te.getData() instanceof LongColumnData);
+        assertEquals(5L, te.getData().getValue(10));
+        assertEquals(1499L, te.getData().getValue(2999));
+        assertEquals(null, te.getData().getValue(5));
+
+        // Changes of parameters are propagated to dependents
+        ta.getData().setValue(2000, 1.0);
+        s.evaluate();
+        assertEquals(2.0, tc.getData().getValue(2000));
+        assertEquals(3.0, td.getData().getValue(2000));
+        assertEquals(0L, te.getData().getValue(2000));
+
+        // Outputs written to primitive longs are registered as changed
+        ta.getData().setValue(2001, 10.0);
+        tc.evaluate();
+        te.evaluate();
+        assertEquals(5L, te.getData().getValue(2001));
+        assertEquals(Arrays.asList(new Range(2001, 2002)), te.getData().getChangedRanges());
+
+        // NaN is written to primitive longs as null while infinity cannot be written
+        Column tf = s.createColumn("F", t, l);
+        tf.calculate((p, out, length) -> {
+            for(int k = 0; k < length; k++) out[k] = p[0][k] == 20.0 ? Double.NaN : p[0][k];
+        }, tc);
+        s.evaluate();
+        assertTrue(tf.getErrors().isEmpty());
+        assertEquals(null, tf.getData().getValue(10));
+        assertEquals(22L, tf.getData().getValue(11));
+        tf.calculate((p, out, length) -> {
+            for(int k = 0; k < length; k++) out[k] = 1.0 / (p[0][k] - 20.0);
+        }, tc);
+        s.evaluate();
+        assertEquals(BistroErrorCode.EVALUATION_ERROR, tf.getErrors().get(0).code);
+
+        // Parameters which are not numbers produce an evaluation error
+        tb.getData().setValue(7, "2");
+        s.evaluate();
+        assertEquals(BistroErrorCode.EVALUATION_ERROR, tc.getErrors().get(0).code);
+    }
+
 }
@@ -0,0 +1,381 @@
+package bistro.core;
+
+import bistro.core.data.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnDataTests {
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @Test
+    public void primitiveTest() {
+        LongColumnData ld = new LongColumnData(0, 3);
+        DoubleColumnData dd = new DoubleColumnData(0, 3);
+        IntColumnData id = new IntColumnData(0, 3);
+        BooleanColumnData bd = new BooleanColumnData(0, 3);
+
+        // Initially all values are nulls (default value)
+        assertEquals(null, ld.getValue(1));
+        assertTrue(dd.isNull(2));
+
+        ld.setLong(0, 5L);
+        ld.setValue(1, 6); // Generic setter converts numbers
+        assertEquals(5L, ld.getLong(0));
+        assertEquals(6L, ld.getValue(1));
+
+        dd.setDouble(0, 1.5);
+        dd.setValue(1, null);
+        assertEquals(1.5, dd.getDouble(0), Double.MIN_VALUE);
+        assertEquals(null, dd.getValue(1));
+
+        id.setValue(2, 7);
+        assertEquals(7, id.getInt(2));
+        assertEquals(7, id.getValue(2));
+
+        bd.setBoolean(0, true);
+        assertEquals(true, bd.getValue(0));
+
+        // Default values for new ids
+        dd.setDefaultValue(0.0);
+        dd.add(2);
+        assertEquals(0.0, dd.getValue(4));
+
+        // Many appends and removals
+        for(long i = 3; i < 1000; i++) {
+            ld.add();
+            ld.setLong(i, i);
+        }
+        ld.remove(900);
+        assertEquals(999L, ld.getValue(999));
+        assertEquals(950L, ld.getLong(950));
+
+        // Sorted search
+        assertEquals(950L, ld.findSorted(950L));
+        assertEquals(-(1000L) - 1, ld.findSorted(5000L)); // Insertion id after the last one
+        assertEquals(960L, ld.findSortedFromStart(960L));
+    }
+
+    @Test
+    public void storageFactoryTest() {
+        Schema s = new Schema("My Schema");
+        Table d = s.createTable("Double");
+        Table t = s.createTable("T");
+        Table t2 = s.createTable("T2");
+
+        // Default factory stores values as they are set
+        Column c0 = s.createColumn("Z", t, d);
+        assertTrue(c0.getData() instanceof ColumnDataImpl);
+        t.getData().add();
+        c0.getData().setValue(0, 5);
+        assertEquals(5, c0.getData().getValue(0));
+
+        // Primitive factory chooses data depending on the output type
+        s.setStorageFactory(new PrimitiveStorageFactory());
+        t = s.createTable("T4");
+        t2 = s.createTable("T5");
+        Column c1 = s.createColumn("A", t);
+        Column c2 = s.createColumn("B", t, d);
+        Column c3 = s.createColumn("C", t2, t);
+        assertTrue(c1.getData() instanceof ColumnDataImpl);
+        assertTrue(c2.getData() instanceof DoubleColumnData);
+        assertTrue(c3.getData() instanceof LongColumnData);
+
+        // Factory for one column
+        StorageFactory objects = new StorageFactoryImpl() {
+            @Override
+            public ColumnData createColumnData(Column column, long start, long end) {
+                return new ColumnDataImpl(start, end);
+            }
+        };
+        t.getData().add(5);
+        Column c4 = s.createColumn("D", t, d, objects);
+        assertTrue(c4.getData() instanceof ColumnDataImpl);
+        assertEquals(5, t.getData().getLength());
+        c4.getData().setValue(4, 1.0); // Ids of the new data are in sync with the table
+
+        // Factory for the whole schema (and for columns of new tables)
+        s.setStorageFactory(objects);
+        Table t3 = s.createTable("T3");
+        Column c5 = s.createColumn("E", t3, t);
+        assertTrue(c5.getData() instanceof ColumnDataImpl);
+    }
+
+    @Test
+    public void changeTrackingTest() {
+        List<ColumnData> datas = Arrays.asList(new ColumnDataImpl(0, 3), new DoubleColumnData(0, 3), new RingColumnData(8, 0, 3), new DirectColumnData(DirectColumnData.Type.LONG, 0, 3));
+        for(ColumnData data : datas) {
+            data.resetChanged();
+
+            // Appending and removing records does not change outputs of existing ids
+            data.add(2);
+            data.remove(1);
+            assertTrue(!data.isChanged());
+            assertTrue(data.getChangedRanges().isEmpty());
+
+            // Batches are written without registering changes (e.g., by parallel workers)
+            data.setValues(1, 2, new Object[] {5L, null});
+            assertEquals(5L, ((Number)data.getValue(1)).longValue());
+            assertEquals(null, data.getValue(2));
+            assertTrue(data.getChangedRanges().isEmpty());
+
+            // Outputs set for one id
+            data.setValue(3, 1L);
+            assertEquals(Arrays.asList(new Range(3, 4)), data.getChangedRanges());
+
+            // Outputs set for all ids
+            data.setValue(0L);
+            assertEquals(Arrays.asList(data.getIdRange()), data.getChangedRanges());
+            data.resetChanged();
+            assertTrue(!data.isChanged());
+        }
+
+        // Table reset is a change even if there were no records
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        t.getData().resetChanged();
+        assertTrue(!t.getData().isChanged());
+        t.getData().reset();
+        assertTrue(t.getData().isChanged());
+        t.getData().resetChanged();
+        assertTrue(!t.getData().isChanged());
+    }
+
+    @Test
+    public void segmentsTest() {
+        ColumnDataImpl cd = new ColumnDataImpl(0, 0);
+        cd.setDefaultValue(0.0);
+
+        // Append many values one by one (crossing segment boundaries)
+        for(long i = 0; i < 5000; i++) {
+            cd.add();
+            cd.setValue(i, (double)i);
+        }
+        assertEquals(0.0, cd.getValue(0));
+        assertEquals(1024.0, cd.getValue(1024));
+        assertEquals(4999.0, cd.getValue(4999));
+
+        // Remove old values and release old segments
+        cd.remove(3000);
+        assertEquals(3000.0, cd.getValue(3000));
+        assertEquals(4999.0, cd.getValue(4999));
+
+        // Fill a range crossing segment boundary
+        cd.setValue(new Range(4000, 4100), -1.0);
+        assertEquals(3999.0, cd.getValue(3999));
+        assertEquals(-1.0, cd.getValue(4000));
+        assertEquals(-1.0, cd.getValue(4099));
+        assertEquals(4100.0, cd.getValue(4100));
+
+        cd.add(2000);
+        assertEquals(0.0, cd.getValue(6999));
+
+        // Sorted search
+        assertEquals(3500L, cd.findSorted(3500.0));
+        assertEquals(-3000L - 1, cd.findSorted(-10.0)); // Insertion before the first id
+        assertEquals(3500L, cd.findSortedFromStart(3500.0));
+    }
+
+    @Test
+    public void ringTest() {
+        RingColumnData cd = new RingColumnData(4, 0, 0);
+
+        // Sliding window of 3 records: append one and remove one
+        for(long i = 0; i < 10; i++) {
+            cd.add();
+            cd.setValue(i, (double)i);
+            if(i >= 3) cd.remove(1);
+        }
+        assertEquals(4, cd.getCapacity()); // No new memory
+        assertEquals(new Range(7, 10), cd.getIdRange());
+        assertEquals(7.0, cd.getValue(7));
+        assertEquals(9.0, cd.getValue(9));
+        assertEquals(8L, cd.findSorted(8.0));
+        assertEquals(-(10L) - 1, cd.findSorted(20.0));
+
+        // Window larger than capacity
+        cd.add(3);
+        assertEquals(8, cd.getCapacity());
+        assertEquals(7.0, cd.getValue(7));
+        assertEquals(null, cd.getValue(12));
+    }
+
+    @Test
+    public void directTest() {
+        DirectColumnData ld = new DirectColumnData(DirectColumnData.Type.LONG, 0, 3);
+        DirectColumnData dd = new DirectColumnData(DirectColumnData.Type.DOUBLE, 0, 3);
+
+        assertEquals(null, ld.getValue(1));
+        ld.setLong(0, 5L);
+        ld.setValue(1, 6);
+        assertEquals(5L, ld.getValue(0));
+        assertEquals(6L, ld.getLong(1));
+
+        dd.setDefaultValue(0.0);
+        dd.add(100000); // Several segments
+        dd.setDouble(99999, 2.5);
+        assertEquals(2.5, dd.getValue(99999));
+        assertEquals(0.0, dd.getValue(100000));
+        assertTrue(dd.isNull(0));
+
+        dd.remove(90000);
+        assertEquals(2.5, dd.getDouble(99999), Double.MIN_VALUE);
+
+        // Operations work with off-heap columns
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new DirectStorageFactory());
+        Table d = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, d);
+        Column tb = s.createColumn("B", t, d);
+        assertTrue(ta.getData() instanceof DirectColumnData);
+
+        t.getData().add(3);
+        ta.getData().setValue(0, 5.0);
+        ta.getData().setValue(2, 6.0);
+        tb.calculate(
+                p -> p[0] == null ? null : 2.0 * (double)p[0] + 1,
+                ta
+        );
+        s.evaluate();
+
+        assertEquals(11.0, tb.getData().getValue(0));
+        assertEquals(null, tb.getData().getValue(1));
+        assertEquals(13.0, tb.getData().getValue(2));
+    }
+
+    @Test
+    public void mappedTest() throws IOException {
+        File dir = Files.createTempDirectory("bistro").toFile();
+        int[] calls = new int[1];
+
+        // Create and populate persistent tables
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new MappedStorageFactory(dir));
+        Table d = s.createTable("Double");
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, d);
+        Column tb = s.createColumn("B", t, d);
+        assertTrue(ta.getData() instanceof MappedColumnData);
+        tb.calculate(p -> { calls[0]++; return p[0] == null ? null : (Double)p[0] * 2.0; }, ta);
+
+        t.getData().add(3);
+        ta.getData().setValue(0, 1.0);
+        ta.getData().setValue(2, 3.0);
+        s.evaluate();
+        assertEquals(3, calls[0]);
+        t.getData().add();
+        ta.getData().setValue(3, 4.0);
+        ta.getData().setValue(2, 5.0);
+        t.getData().remove();
+
+        // New output type needs new data and the old file is closed
+        Column tc = s.createColumn("C", t, d);
+        MappedColumnData tcData = (MappedColumnData)tc.getData();
+        tc.setOutput(s.createTable("Long"));
+        assertTrue(!tcData.isOpen());
+        assertTrue(tc.getData() instanceof MappedColumnData);
+
+        s.close();
+        assertTrue(!((MappedColumnData)ta.getData()).isOpen());
+
+        // Reopen the data in a new schema with the same definitions
+        Schema s2 = new Schema("My Schema");
+        s2.setStorageFactory(new MappedStorageFactory(dir));
+        Table d2 = s2.createTable("Double");
+        Table t2 = s2.createTable("T");
+        Column ta2 = s2.createColumn("A", t2, d2);
+        Column tb2 = s2.createColumn("B", t2, d2);
+        tb2.calculate(p -> { calls[0]++; return p[0] == null ? null : (Double)p[0] * 2.0; }, ta2);
+
+        assertEquals(3, t2.getData().getLength());
+        assertEquals(new Range(3, 4), t2.getData().getAddedRange()); // Not evaluated changes are retained
+        assertEquals(new Range(0, 1), t2.getData().getRemovedRange());
+        assertEquals(1.0, ta2.getData().getValue(0));
+        assertEquals(null, ta2.getData().getValue(1));
+        assertEquals(4.0, ta2.getData().getValue(3));
+        assertEquals(Arrays.asList(new Range(2, 4)), ta2.getData().getChangedRanges());
+
+        // Only added and changed records are evaluated
+        calls[0] = 0;
+        s2.evaluate();
+        assertEquals(2, calls[0]);
+        assertEquals(10.0, tb2.getData().getValue(2));
+        assertEquals(8.0, tb2.getData().getValue(3));
+
+        s2.close();
+
+        // Reopened data with another definition is evaluated anew
+        Schema s3 = new Schema("My Schema");
+        s3.setStorageFactory(new MappedStorageFactory(dir));
+        Table d3 = s3.createTable("Double");
+        Table t3 = s3.createTable("T");
+        Column ta3 = s3.createColumn("A", t3, d3);
+        Column tb3 = s3.createColumn("B", t3, d3);
+        tb3.calculate(p -> { calls[0]++; return p[0] == null ? null : (Double)p[0] * 2.0; }, ta3);
+        tb3.calculate(p -> { calls[0]++; return p[0] == null ? null : (Double)p[0] * 3.0; }, ta3);
+        calls[0] = 0;
+        s3.evaluate();
+        assertEquals(3, calls[0]);
+        assertEquals(12.0, tb3.getData().getValue(3));
+
+        s3.close();
+        for(File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void mappedTruncateTest() throws IOException { // Segments of removed ids are cut off when the file is closed
+        File dir = Files.createTempDirectory("bistro").toFile();
+        long segmentBytes = 65536 * 8 + 65536 / 8;
+
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new MappedStorageFactory(dir));
+        Table t = s.createTable("T");
+        Column ta = s.createColumn("A", t, s.createTable("Long"));
+        t.getData().add(200000);
+        for(long i = 0; i < 200000; i++) {
+            ta.getData().setValue(i, i);
+        }
+        s.evaluate();
+        t.getData().remove(150000);
+        s.evaluate();
+        s.close();
+        File file = ((MappedColumnData)ta.getData()).getFile();
+        assertEquals(64 + 2 * segmentBytes, file.length()); // Ids 150000-199999 are in two segments
+
+        Schema s2 = new Schema("My Schema");
+        s2.setStorageFactory(new MappedStorageFactory(dir));
+        Table t2 = s2.createTable("T");
+        Column ta2 = s2.createColumn("A", t2, s2.createTable("Long"));
+        assertEquals(new Range(150000, 200000), ta2.getData().getIdRange());
+        assertEquals(150000L, ta2.getData().getValue(150000));
+        assertEquals(199999L, ta2.getData().getValue(199999));
+
+        // Appending after reopening
+        t2.getData().add();
+        ta2.getData().setValue(200000, 5L);
+        assertEquals(5L, ta2.getData().getValue(200000));
+
+        s2.close();
+        for(File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+}
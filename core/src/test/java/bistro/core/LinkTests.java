@@ -1,14 +1,19 @@
 package bistro.core;
 
+import bistro.core.data.DirectStorageFactory;
+import bistro.core.data.PrimitiveStorageFactory;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class LinkTests {
@@ -47,6 +52,169 @@ public class LinkTests {
         assertEquals(-1L, t2c.getData().getValue(1)); // Not found
     }
 
+    @Test
+    public void indexTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("T");
+        Column ta = t.getColumn("A");
+        Column tb = t.getColumn("B");
+        List<Column> keys = Arrays.asList(ta, tb);
+
+        t.getData().createIndex(keys);
+        assertEquals(0L, t.getData().findValues(Arrays.asList(5.0, "bbb"), keys));
+
+        // New records are indexed
+        long id = t.getData().add();
+        t.getData().setValues(id, keys, Arrays.asList(10.0, "ccc"));
+        assertEquals(1L, t.getData().findValues(Arrays.asList(10.0, "ccc"), keys));
+
+        // Changed records are re-indexed
+        t.getData().setValues(id, keys, Arrays.asList(20.0, "ccc"));
+        assertEquals(-1L, t.getData().findValues(Arrays.asList(10.0, "ccc"), keys));
+        assertEquals(1L, t.getData().findValues(Arrays.asList(20.0, "ccc"), keys));
+
+        // Removed records are not found
+        t.getData().remove();
+        assertEquals(-1L, t.getData().findValues(Arrays.asList(5.0, "bbb"), keys));
+        t.getData().resetChanged();
+        assertEquals(-1L, t.getData().findValues(Arrays.asList(5.0, "bbb"), keys));
+        assertEquals(1L, t.getData().findValues(Arrays.asList(20.0, "ccc"), keys));
+
+        // Values changed directly in column data are re-indexed
+        tb.getData().setValue(1, "ddd");
+        assertEquals(1L, t.getData().findValues(Arrays.asList(20.0, "ddd"), keys));
+        assertEquals(-1L, t.getData().findValues(Arrays.asList(20.0, "ccc"), keys));
+        tb.getData().setValue(1, "eee"); // Changed again
+        assertEquals(1L, t.getData().findValues(Arrays.asList(20.0, "eee"), keys));
+
+        // Also if the changes have been reset before the search
+        tb.getData().setValue(1, "fff");
+        tb.getData().resetChanged();
+        assertEquals(1L, t.getData().findValues(Arrays.asList(20.0, "fff"), keys));
+        assertEquals(-1L, t.getData().findValues(Arrays.asList(20.0, "eee"), keys));
+
+        // Single key column
+        Table t2 = s.getTable("T2");
+        t2.getData().createIndex(t2.getColumn("A"));
+        assertEquals(1L, t2.getData().findValues(Arrays.asList(10.0), Arrays.asList(t2.getColumn("A"))));
+    }
+
+    @Test
+    public void longIndexTest() {
+        Schema s = new Schema("My Schema");
+        s.setStorageFactory(new PrimitiveStorageFactory()); // Numbers are stored in primitive arrays
+        Table l = s.createTable("Long");
+
+        // Dimension with numeric key
+        Table d = s.createTable("D");
+        Column dk = s.createColumn("K", d, l);
+        d.getData().add(3000);
+        for(long i = 0; i < 3000; i++) {
+            dk.getData().setValue(i, 10 * i);
+        }
+        d.getData().createIndex(dk);
+        assertEquals(Long.class, d.getData().getLongIndexClass(dk));
+
+        // Facts referencing the dimension
+        Table f = s.createTable("F");
+        Column fk = s.createColumn("K", f, l);
+        Column fd = s.createColumn("D", f, d);
+        f.getData().add(5000);
+        for(long i = 0; i < 5000; i++) {
+            fk.getData().setValue(i, 20 * i);
+        }
+        fk.getData().setValue(1, null);
+
+        fd.link(new Column[] {fk}, dk);
+        s.evaluate();
+        assertNull(f.getData().getLongIndexClass(fk));
+
+        assertEquals(0L, fd.getData().getValue(0));
+        assertEquals(-1L, fd.getData().getValue(1)); // Null key
+        assertEquals(1000L, fd.getData().getValue(500));
+        assertEquals(-1L, fd.getData().getValue(1500)); // Not found
+
+        // Deleting and changing keys
+        long[] ids = new long[3];
+        d.getData().setValues(2, Arrays.asList(dk), Arrays.asList(-10L));
+        d.getData().remove(2);
+        d.getData().resetChanged();
+        assertTrue(d.getData().findValues(new long[] {0L, -10L, 20L}, 3, dk, ids));
+        assertEquals(-1L, ids[0]); // Removed
+        assertEquals(2L, ids[1]); // Changed
+        assertEquals(-1L, ids[2]);
+        assertEquals(2999L, d.getData().findValues(Arrays.asList(29990L), Arrays.asList(dk)));
+
+        // Keys changed directly in column data are found by links
+        dk.getData().setValue(3, 7L);
+        fk.getData().setValue(0, 7L);
+        s.evaluate();
+        assertEquals(3L, fd.getData().getValue(0));
+        assertEquals(3L, d.getData().findValues(Arrays.asList(7L), Arrays.asList(dk)));
+
+        // Keys are equal only to values of the same class (as in the generic index)
+        assertEquals(-1L, d.getData().findValues(Arrays.asList(29990.0), Arrays.asList(dk)));
+        assertEquals(-1L, d.getData().findValues(Arrays.asList(29990), Arrays.asList(dk)));
+        assertEquals(-1L, d.getData().findValues(Arrays.asList(10.5), Arrays.asList(dk)));
+        assertEquals(-1L, d.getData().findValues(Arrays.asList(29990.9), Arrays.asList(dk)));
+        assertEquals(-1L, d.getData().findValues(Arrays.asList("10"), Arrays.asList(dk)));
+    }
+
+    @Test
+    public void longIndexStorageTest() { // Numeric keys are indexed and found in the same way independent of the storage
+        List<Object> defaultOutputs = this.linkNumericKeys(null);
+        List<Object> primitiveOutputs = this.linkNumericKeys(new PrimitiveStorageFactory());
+        List<Object> directOutputs = this.linkNumericKeys(new DirectStorageFactory());
+
+        assertEquals(Arrays.asList(0L, 2L, -1L, -1L, -1L, -1L, 2L, -1L), defaultOutputs);
+        assertEquals(defaultOutputs, primitiveOutputs);
+        assertEquals(defaultOutputs, directOutputs);
+    }
+
+    List<Object> linkNumericKeys(StorageFactory factory) {
+        Schema s = new Schema("My Schema");
+        if(factory != null) s.setStorageFactory(factory);
+        Table l = s.createTable("Long");
+        Table i = s.createTable("Integer");
+
+        // Dimensions with a long and an int key
+        Table d = s.createTable("D");
+        Column dk = s.createColumn("K", d, l);
+        Table e = s.createTable("E");
+        Column ek = s.createColumn("K", e, i);
+        d.getData().add(4);
+        e.getData().add(4);
+        for(long id = 0; id < 4; id++) {
+            dk.getData().setValue(id, 10L * id);
+            ek.getData().setValue(id, 10 * (int)id);
+        }
+        dk.getData().setValue(3, null);
+        d.getData().createIndex(dk);
+        e.getData().createIndex(ek);
+        assertEquals(Long.class, d.getData().getLongIndexClass(dk));
+        assertEquals(Integer.class, e.getData().getLongIndexClass(ek));
+
+        // Facts with keys of different classes (values are stored as they are only in generic column data)
+        Table f = s.createTable("F");
+        Column fk = s.createColumn("K", f);
+        Column fd = s.createColumn("D", f, d);
+        Column fe = s.createColumn("E", f, e);
+        f.getData().add(4);
+        fk.getData().setValue(0, 0L);
+        fk.getData().setValue(1, 20L);
+        fk.getData().setValue(2, 20); // Integer is not equal to a long key
+        fk.getData().setValue(3, 20.0); // Double is not equal to any key
+
+        fd.link(new Column[] {fk}, dk);
+        fe.link(new Column[] {fk}, ek);
+        s.evaluate();
+
+        List<Object> outputs = new java.util.ArrayList<>();
+        for(long id = 0; id < 4; id++) outputs.add(fd.getData().getValue(id));
+        for(long id = 0; id < 4; id++) outputs.add(fe.getData().getValue(id));
+        return outputs;
+    }
+
     Schema createSchema() {
         Schema s = new Schema("My Schema");
 
@@ -91,6 +259,59 @@ public class LinkTests {
     // Link and project to number range
     //
 
+    @Test
+    public void projIncrementalTest() {
+        Schema s = new Schema("My Schema");
+
+        Table d = s.createTable("D"); // Groups
+        Column da = s.createColumn("A", d);
+        da.attribute();
+        d.product();
+
+        Table f = s.createTable("F"); // Facts
+        Column fa = s.createColumn("A", f);
+        Column fd = s.createColumn("D", f, d);
+        fd.project(new Column[] {fa}, da);
+
+        Column dc = s.createColumn("Count", d);
+        dc.getData().setDefaultValue(0.0);
+        dc.accumulate(fd, (a,p) -> (Double)a + 1.0, null);
+
+        f.getData().add(3);
+        fa.getData().setValue(0, "a");
+        fa.getData().setValue(1, "b");
+        fa.getData().setValue(2, "a");
+        s.evaluate();
+
+        assertEquals(2L, d.getData().getLength());
+        assertEquals(0L, fd.getData().getValue(0));
+        assertEquals(1L, fd.getData().getValue(1));
+
+        // New facts are projected into the existing population
+        f.getData().add(2);
+        fa.getData().setValue(3, "c");
+        fa.getData().setValue(4, "b");
+        s.evaluate();
+
+        assertEquals(3L, d.getData().getLength());
+        assertEquals(1L, fd.getData().getValue(1)); // Old ids are retained
+        assertEquals(2L, fd.getData().getValue(3));
+        assertEquals(1L, fd.getData().getValue(4));
+        assertEquals(2.0, dc.getData().getValue(0));
+        assertEquals(2.0, dc.getData().getValue(1));
+        assertEquals(1.0, dc.getData().getValue(2));
+
+        // Changed facts require projecting all facts into a new population
+        fa.getData().setValue(1, "x");
+        s.evaluate();
+
+        assertEquals(4L, d.getData().getLength());
+        assertEquals(1L, fd.getData().getValue(1));
+        assertEquals("x", da.getData().getValue(1));
+        assertEquals(1.0, dc.getData().getValue(1));
+        assertEquals(2.0, dc.getData().getValue(0));
+    }
+
     @Test
     public void linkRangeNumberTest() {
         Schema s = createSchemaNumber();
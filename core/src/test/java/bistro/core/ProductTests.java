@@ -71,6 +71,107 @@ public class ProductTests {
         assertEquals(3L, c32.getData().getValue(2));
     }
 
+    @Test
+    public void prodIncrementalTest() {
+        Schema s = createSchema();
+        Table t1 = s.getTable("T1");
+        Table t2 = s.getTable("T2");
+        Table t3 = s.getTable("T3");
+        Column c31 = t3.getColumn("C31");
+        Column c32 = t3.getColumn("C32");
+
+        s.evaluate();
+        assertEquals(6, t3.getData().getLength());
+
+        // New record of the first dimension: only its combinations are appended
+        t1.getData().add();
+        s.evaluate();
+
+        assertEquals(9, t3.getData().getLength());
+        assertEquals(new Range(0, 9), t3.getData().getIdRange());
+        assertEquals(1L, c31.getData().getValue(0)); // Existing records are retained
+        assertEquals(3L, c31.getData().getValue(6));
+        assertEquals(1L, c32.getData().getValue(6));
+        assertEquals(3L, c32.getData().getValue(8));
+
+        // Removed record of the first dimension: its combinations are the oldest records
+        t1.getData().remove();
+        s.evaluate();
+
+        assertEquals(6, t3.getData().getLength());
+        assertEquals(new Range(3, 9), t3.getData().getIdRange());
+
+        // New record of the second dimension: combinations with all records of the first dimension
+        t2.getData().add();
+        s.evaluate();
+
+        assertEquals(8, t3.getData().getLength());
+        assertEquals(2L, c31.getData().getValue(9));
+        assertEquals(4L, c32.getData().getValue(9));
+        assertEquals(3L, c31.getData().getValue(10));
+
+        // Removed combinations are not only the oldest records so the table is populated again
+        t1.getData().remove();
+        s.evaluate();
+
+        assertEquals(4, t3.getData().getLength());
+        assertEquals(3L, c31.getData().getValue(0));
+        assertEquals(4L, c32.getData().getValue(3));
+    }
+
+    @Test
+    public void virtualProdTest() {
+        Schema s = createSchema();
+        Table t1 = s.getTable("T1");
+        Table t2 = s.getTable("T2");
+        Table t3 = s.getTable("T3");
+        Column c31 = t3.getColumn("C31");
+        Column c32 = t3.getColumn("C32");
+
+        t3.product(true);
+
+        // Facts linked to the combinations
+        Table f = s.createTable("F");
+        Column f1 = s.createColumn("F1", f, t1);
+        Column f2 = s.createColumn("F2", f, t2);
+        Column f3 = s.createColumn("F3", f, t3);
+        f3.link(new Column[] {f1, f2}, c31, c32);
+
+        f.getData().add(2);
+        f1.getData().setValue(0, 2L); f2.getData().setValue(0, 3L);
+        f1.getData().setValue(1, 1L); f2.getData().setValue(1, 5L); // Does not exist
+
+        s.evaluate();
+
+        assertEquals(6, t3.getData().getLength());
+        assertEquals(1L, c31.getData().getValue(0));
+        assertEquals(1L, c32.getData().getValue(0));
+        assertEquals(2L, c31.getData().getValue(4));
+        assertEquals(2L, c32.getData().getValue(4));
+        assertEquals(5L, f3.getData().getValue(0));
+        assertEquals(-1L, f3.getData().getValue(1));
+
+        // New record of the first dimension appends ids
+        t1.getData().add();
+        s.evaluate();
+
+        assertEquals(9, t3.getData().getLength());
+        assertEquals(3L, c31.getData().getValue(8));
+        assertEquals(5L, f3.getData().getValue(0));
+
+        // New record of the second dimension changes all ids
+        t2.getData().add();
+        f.getData().add();
+        f1.getData().setValue(2, 3L); f2.getData().setValue(2, 4L);
+        s.evaluate();
+
+        assertEquals(12, t3.getData().getLength());
+        assertEquals(2L, c31.getData().getValue(6));
+        assertEquals(3L, c32.getData().getValue(6));
+        assertEquals(6L, f3.getData().getValue(0));
+        assertEquals(11L, f3.getData().getValue(2));
+    }
+
     Schema createSchema() {
         // Create and configure: schema, tables, keyColumns
         Schema s = new Schema("My Schema");
@@ -90,6 +90,69 @@ public class RangeTests {
         assertEquals(4L, c12.getData().getValue(4));
     }
 
+    @Test
+    public void linkRangeDurationTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+
+        // Millisecond intervals are too many for nanoseconds of distant instants
+        t.range(
+                Instant.parse("2018-01-01T00:00:00.00Z"),
+                Duration.ofMillis(1),
+                1000L,
+                true
+        );
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        f.getData().add(4);
+        fa.getData().setValue(0, Instant.parse("2018-01-01T00:00:00.005Z"));
+        fa.getData().setValue(1, Instant.parse("2318-01-01T00:00:00.00Z")); // Far after end
+        fa.getData().setValue(2, Instant.parse("1718-01-01T00:00:00.00Z")); // Far before origin
+        fa.getData().setValue(3, Instant.parse("2018-01-01T00:00:00.999Z")); // Last interval
+
+        s.evaluate();
+
+        assertEquals(5L, fb.getData().getValue(0));
+        assertEquals(-1L, fb.getData().getValue(1));
+        assertEquals(-1L, fb.getData().getValue(2));
+        assertEquals(999L, fb.getData().getValue(3));
+    }
+
+    @Test
+    public void linkRangeMixedPeriodTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+
+        // Intervals of one month and one day
+        t.range(
+                LocalDate.of(2018, Month.JANUARY, 1),
+                Period.of(0, 1, 1),
+                1000L
+        );
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        f.getData().add(3);
+        fa.getData().setValue(0, LocalDate.of(2018, Month.FEBRUARY, 2)); // Start of the second interval
+        fa.getData().setValue(1, LocalDate.of(2018, Month.FEBRUARY, 1)); // Still first interval
+        fa.getData().setValue(2, LocalDate.of(2400, Month.JANUARY, 1)); // After end
+
+        s.evaluate();
+
+        assertEquals(1L, fb.getData().getValue(0));
+        assertEquals(0L, fb.getData().getValue(1));
+        assertEquals(-1L, fb.getData().getValue(2));
+        assertEquals(LocalDate.of(2018, Month.FEBRUARY, 2), t.getColumn("V").getData().getValue(1));
+        assertEquals(LocalDate.of(2103, Month.DECEMBER, 26), t.getColumn("V").getData().getValue(999));
+    }
+
     @Test
     public void rangePeriodTest() {
         Schema s = createSchema();
@@ -125,6 +188,163 @@ public class RangeTests {
         assertEquals(4L, c12.getData().getValue(4));
     }
 
+    @Test
+    public void linkRangePeriodTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+
+        // Monthly intervals starting from the end of month
+        t.range(
+                LocalDate.of(2018, Month.JANUARY, 31),
+                Period.ofMonths(1),
+                12L
+        );
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        f.getData().add(5);
+        fa.getData().setValue(0, LocalDate.of(2018, Month.JANUARY, 30)); // Before origin
+        fa.getData().setValue(1, LocalDate.of(2018, Month.FEBRUARY, 28)); // Start of the second interval
+        fa.getData().setValue(2, LocalDate.of(2018, Month.MARCH, 30)); // Still second interval
+        fa.getData().setValue(3, LocalDate.of(2018, Month.MARCH, 31)); // Third interval (not accumulated from February)
+        fa.getData().setValue(4, LocalDate.of(2019, Month.MARCH, 1)); // After end
+
+        s.evaluate();
+
+        assertEquals(LocalDate.of(2018, Month.MARCH, 31), t.getColumn("V").getData().getValue(2));
+        assertEquals(-1L, fb.getData().getValue(0));
+        assertEquals(1L, fb.getData().getValue(1));
+        assertEquals(1L, fb.getData().getValue(2));
+        assertEquals(2L, fb.getData().getValue(3));
+        assertEquals(-1L, fb.getData().getValue(4));
+
+        // Re-evaluation of the range table does not duplicate intervals
+        t.range(LocalDate.of(2018, Month.JANUARY, 31), Period.ofMonths(1), 12L);
+        s.evaluate();
+        assertEquals(12, t.getData().getLength());
+    }
+
+    @Test
+    public void linkRangeIncrementalTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+
+        t.range(10.0, 20.0, 5L);
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        f.getData().add(2);
+        fa.getData().setValue(0, 15.0);
+        fa.getData().setValue(1, 55.0);
+        s.evaluate();
+
+        assertEquals(0L, fb.getData().getValue(0));
+        assertEquals(2L, fb.getData().getValue(1));
+
+        // Only new and changed facts are mapped
+        fa.getData().setValue(0, 75.0);
+        f.getData().add(2);
+        fa.getData().setValue(2, 35.0);
+        fa.getData().setValue(3, 200.0);
+        s.evaluate();
+
+        assertEquals(3L, fb.getData().getValue(0));
+        assertEquals(1L, fb.getData().getValue(2));
+        assertEquals(-1L, fb.getData().getValue(3));
+
+        // Changes of the fact column require mapping all facts
+        fa.getData().setChanged();
+        s.evaluate();
+
+        assertEquals(3L, fb.getData().getValue(0));
+        assertEquals(1L, fb.getData().getValue(2));
+    }
+
+    @Test
+    public void virtualRangeTest() {
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+        Column tv = t.getColumn("V");
+        Column ti = t.getColumn("I");
+
+        // Hourly intervals of a year are not materialized
+        t.range(
+                Instant.parse("2018-01-01T00:00:00.00Z"),
+                Duration.ofHours(1),
+                24L * 365,
+                true
+        );
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fm = s.createColumn("M", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        Column tc = s.createColumn("C", t);
+        tc.getData().setDefaultValue(0.0);
+        tc.accumulate(
+                fb,
+                (a,p) -> (Double)a + (Double)p[0],
+                null,
+                fm
+        );
+
+        f.getData().add(3);
+        fa.getData().setValue(0, Instant.parse("2018-01-01T10:15:00.00Z"));
+        fm.getData().setValue(0, 1.0);
+        fa.getData().setValue(1, Instant.parse("2018-01-01T10:45:00.00Z"));
+        fm.getData().setValue(1, 2.0);
+        fa.getData().setValue(2, Instant.parse("2017-12-31T23:00:00.00Z")); // Before origin
+        fm.getData().setValue(2, 5.0);
+
+        s.evaluate();
+
+        // Only intervals up to the last used one are populated and ids are interval numbers
+        assertEquals(11, t.getData().getLength());
+        assertEquals(10L, fb.getData().getValue(0));
+        assertEquals(10L, fb.getData().getValue(1));
+        assertEquals(-1L, fb.getData().getValue(2));
+        assertEquals(Instant.parse("2018-01-01T10:00:00.00Z"), tv.getData().getValue(10));
+        assertEquals(10L, ti.getData().getValue(10));
+        assertEquals(3.0, tc.getData().getValue(10));
+        assertEquals(0.0, tc.getData().getValue(9));
+    }
+
+    @Test
+    public void virtualRangeLongPeriodTest() { // Interval numbers of calendar periods are not truncated to int
+        Schema s = createSchema();
+        Table t = s.getTable("R");
+        LocalDate origin = LocalDate.of(2018, Month.JANUARY, 1);
+
+        t.range(origin, Period.ofDays(1), 3_000_000_000L, true);
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        Column fb = s.createColumn("B", f, t);
+        fb.link(new ColumnPath(fa));
+
+        f.getData().add(1);
+        fa.getData().setValue(0, origin.plusDays(2_500_000_000L));
+        s.evaluate();
+
+        assertTrue(fb.getErrors().isEmpty());
+        assertEquals(2_500_000_000L, fb.getData().getValue(0));
+        assertEquals(origin.plusDays(2_500_000_000L), t.getColumn("V").getData().getValue(2_500_000_000L));
+
+        // Intervals which cannot be represented produce an evaluation error
+        t.range(origin, Period.ofYears(1_000_000), 3_000_000_000L, true);
+        fa.getData().setValue(0, LocalDate.MAX);
+        s.evaluate();
+        assertEquals(BistroErrorCode.EVALUATION_ERROR, fb.getErrors().get(0).code);
+    }
+
     Schema createSchema() {
         // Create and configure: schema, tables, keyColumns
         Schema s = new Schema("My Schema");
@@ -75,6 +75,57 @@ public class RollTests {
         assertEquals(6.0, t_r.getData().getValue(4));
     }
 
+    @Test
+    public void rollIncrementalTest() {
+        Schema s = this.createSchema();
+        Table t = s.getTable("F");
+        Column t_m = t.getColumn("M");
+        Column t_d = t.getColumn("D");
+
+        // Moving sum within 1 second in the past and 100 milliseconds in the future
+        Column t_r = s.createColumn("R", t);
+        t_r.getData().setDefaultValue(0.0);
+        t_r.roll(
+                t_d,
+                1000, 100,
+                (a,p) -> (Double)a + (Double)p[0], // Adder
+                (a,p) -> (Double)a - (Double)p[0], // Subtractor
+                t_m
+        );
+        s.evaluate();
+
+        assertEquals(1.0, t_r.getData().getValue(0));
+        assertEquals(5.0, t_r.getData().getValue(1));
+        assertEquals(7.0, t_r.getData().getValue(2));
+        assertEquals(7.0, t_r.getData().getValue(3));
+        assertEquals(6.0, t_r.getData().getValue(4));
+
+        // Append a fact which falls into the future window of the last row
+        long id = t.getData().add();
+        t_m.getData().setValue(id, 4.0);
+        t_d.getData().setValue(id, 1514761200000L + 2050L);
+        s.evaluate();
+
+        assertEquals(7.0, t_r.getData().getValue(3)); // Not changed
+        assertEquals(10.0, t_r.getData().getValue(4));
+        assertEquals(10.0, t_r.getData().getValue(5));
+
+        // Remove the oldest facts which are in the past windows of the next rows
+        t.getData().remove(2);
+        s.evaluate();
+
+        assertEquals(5.0, t_r.getData().getValue(2));
+        assertEquals(5.0, t_r.getData().getValue(3));
+        assertEquals(10.0, t_r.getData().getValue(4));
+
+        // A changed fact updates only the windows which contain it
+        t_m.getData().setValue(3, 1.0);
+        s.evaluate();
+
+        assertEquals(4.0, t_r.getData().getValue(2));
+        assertEquals(9.0, t_r.getData().getValue(5));
+    }
+
     Schema createSchema() {
 
         Schema schema = new Schema("My Schema");
@@ -1,12 +1,16 @@
 package bistro.core;
 
+import bistro.core.data.RingColumnData;
+import bistro.core.data.RingStorageFactory;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -40,6 +44,40 @@ public class Tests {
         assertEquals(1, s.getTables().size()); // Only primitive tables
     }
 
+    @Test
+    public void catalogTest() { // Lookups of tables and columns after changes of the schema
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Table t2 = s.createTable("T2");
+        Column c1 = s.createColumn("A", t);
+        Column c2 = s.createColumn("B", t);
+        Column c3 = s.createColumn("C", t2, t);
+
+        assertEquals(t, s.getTable("T"));
+        assertEquals(t, s.getTableById(t.getId().toString()));
+        assertEquals(c2, s.getColumn("T", "B"));
+        assertEquals(c3, s.getColumnById(c3.getId().toString()));
+        assertEquals(Arrays.asList(c1, c2), t.getColumns());
+
+        // Renamed elements are found by their new names
+        t.setName("R");
+        c2.setName("D");
+        assertEquals(null, s.getTable("T"));
+        assertEquals(c2, s.getColumn("R", "D"));
+        assertEquals(null, t.getColumn("B"));
+
+        // Moved columns belong to their new input table
+        c1.setInput(t2);
+        assertEquals(Arrays.asList(c2), t.getColumns());
+        assertEquals(c1, t2.getColumn("A"));
+
+        // Columns of deleted tables are deleted
+        s.deleteTable(t);
+        assertEquals(Arrays.asList(c1), s.getColumns());
+        assertEquals(Arrays.asList(c1), t2.getColumns());
+        assertEquals(null, s.getColumnById(c2.getId().toString()));
+    }
+
     @Test
     public void dataTest() { // Manual operations table id ranges
         // Prepopulate table for experiments with column data
@@ -135,4 +173,323 @@ public class Tests {
 
     }
 
+    @Test
+    public void releaseTest() { // Removed records are freed in column data unless dependents read them
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T", new RingStorageFactory(16));
+        Column ta = s.createColumn("A", t);
+        Column tb = s.createColumn("B", t);
+        tb.calculate(p -> (Double)p[0] + 1.0, ta);
+
+        // Sliding window which is never evaluated does not grow
+        for(long i = 0; i < 100; i++) {
+            long id = t.getData().add();
+            ta.getData().setValue(id, (double)i);
+            if(t.getData().getLength() > 10) t.getData().remove();
+        }
+        assertEquals(10, t.getData().getLength());
+        assertEquals(90, ta.getData().getIdRange().start);
+        assertEquals(16, ((RingColumnData)ta.getData()).getCapacity());
+
+        s.evaluate();
+        assertEquals(100.0, tb.getData().getValue(99));
+
+        // Removed facts are subtracted by accumulate columns so they are kept till the next evaluation
+        Table g = s.createTable("G");
+        Column gs = s.createColumn("S", g);
+        Column tg = s.createColumn("G", t, g);
+        g.getData().add();
+        tg.calculate(p -> 0L, new Column[] {});
+        gs.getData().setDefaultValue(0.0);
+        gs.accumulate(tg, (a,p) -> (Double)a + (Double)p[0], (a,p) -> (Double)a - (Double)p[0], ta);
+        s.evaluate();
+        assertEquals(945.0, gs.getData().getValue(0)); // 90 + ... + 99
+
+        assertTrue(t.isRemovedRead());
+        t.getData().remove(5);
+        assertEquals(90, ta.getData().getIdRange().start);
+        s.evaluate();
+        assertEquals(95, ta.getData().getIdRange().start);
+        assertEquals(485.0, gs.getData().getValue(0)); // 95 + ... + 99
+
+        // Removed records might be read through links from other tables
+        s.deleteColumn(gs);
+        s.evaluate();
+        assertTrue(!t.isRemovedRead());
+        Table x = s.createTable("X");
+        Column xl = s.createColumn("L", x, t);
+        Column xb = s.createColumn("B", x);
+        x.getData().add();
+        xl.getData().setValue(0, 99L);
+        xb.calculate(p -> p[0], new ColumnPath(xl, tb));
+        s.evaluate();
+        assertTrue(t.isRemovedRead());
+        assertEquals(100.0, xb.getData().getValue(0));
+
+        t.getData().remove(5);
+        assertEquals(100.0, tb.getData().getValue(99));
+        assertEquals(95, tb.getData().getIdRange().start);
+        s.evaluate();
+        assertEquals(100, tb.getData().getIdRange().start);
+    }
+
+    @Test
+    public void concurrentTest() { // Evaluation of independent elements in parallel
+        Schema s1 = createConcurrentSchema();
+        s1.evaluate();
+
+        Schema s2 = createConcurrentSchema();
+        s2.setExecutor(ForkJoinPool.commonPool());
+        s2.evaluate();
+
+        for(Column c1 : s1.getColumns()) {
+            Column c2 = s2.getColumn(c1.getInput().getName(), c1.getName());
+            assertTrue(c2.getErrors().isEmpty());
+            Range r = c1.getInput().getData().getIdRange();
+            for(long i = r.start; i < r.end; i++) {
+                assertEquals(c1.getData().getValue(i), c2.getData().getValue(i));
+            }
+        }
+
+        // Errors are reported per element and do not stop other elements
+        Column bad = s2.getColumn("F", "C0");
+        bad.calculate(p -> ((String)p[0]).length(), s2.getColumn("F", "A"));
+        s2.evaluate();
+        assertEquals(1, bad.getErrors().size());
+        assertTrue(s2.getColumn("F", "C1").getErrors().isEmpty());
+    }
+
+    @Test
+    public void deepSchemaTest() { // Dirty and error state is computed once for each element
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column c0 = s.createColumn("C0", t);
+        Column c1 = s.createColumn("C1", t);
+        t.getData().add(2);
+        c0.getData().setValue(new Range(0, 2), 1.0);
+        c1.getData().setValue(new Range(0, 2), 1.0);
+
+        // Each column depends on two previous columns so the number of dependency paths grows exponentially
+        long[] calls = new long[1];
+        List<Column> cols = new java.util.ArrayList<>(Arrays.asList(c0, c1));
+        for(int i = 2; i < 50; i++) {
+            Column c = s.createColumn("C" + i, t);
+            c.calculate(p -> { calls[0]++; return (Double)p[0] + (Double)p[1]; }, cols.get(i - 2), cols.get(i - 1));
+            cols.add(c);
+        }
+        s.evaluate();
+        assertEquals(96, calls[0]);
+        assertEquals(12586269025.0, cols.get(49).getData().getValue(1));
+
+        // Nothing to evaluate
+        calls[0] = 0;
+        s.evaluate();
+        assertEquals(0, calls[0]);
+        assertTrue(!cols.get(49).isDirty());
+        assertTrue(s.getTopology() == s.getTopology()); // State is memoized by the same topology
+
+        // Individual evaluation sees new data and makes its dependents dirty
+        c0.getData().setValue(0, 2.0);
+        cols.get(2).evaluate();
+        assertEquals(1, calls[0]);
+        assertTrue(cols.get(3).isDirty());
+        s.evaluate();
+
+        // Errors in one column prevent evaluation of all its dependents
+        cols.get(10).calculate(p -> ((String)p[0]).length(), c0, c1);
+        s.evaluate();
+        assertEquals(1, cols.get(10).getErrors().size());
+        assertTrue(cols.get(49).hasErrorsDeep());
+        assertTrue(cols.get(9).getErrors().isEmpty());
+    }
+
+    @Test
+    public void topologyTest() { // Dependency graph is updated when definitions change
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column b = s.createColumn("B", t);
+        Column c = s.createColumn("C", t);
+        t.getData().add(2);
+        a.getData().setValue(new Range(0, 2), 1.0);
+
+        b.calculate(p -> (Double)p[0] + 1.0, a);
+        c.calculate(p -> (Double)p[0] + 1.0, b);
+        s.evaluate();
+        assertEquals(3.0, c.getData().getValue(1));
+        assertEquals(Arrays.asList(b), a.getDependents());
+        assertEquals(Arrays.asList(c), b.getDependents());
+
+        // New definition moves the column and its dependents to other layers
+        Column d = s.createColumn("D", t);
+        d.calculate(p -> (Double)p[0] * 10.0, a);
+        b.calculate(p -> (Double)p[0] + 1.0, d);
+        s.evaluate();
+        assertEquals(12.0, c.getData().getValue(1));
+        assertEquals(Arrays.asList(d), a.getDependents());
+        assertEquals(Arrays.asList(b), d.getDependents());
+
+        // Dependents of a deleted column are not evaluated
+        s.deleteColumn(d);
+        b.getData().setValue(new Range(0, 2), 0.0);
+        s.evaluate();
+        assertTrue(a.getDependents().isEmpty());
+        assertEquals(0.0, b.getData().getValue(1));
+    }
+
+    @Test
+    public void topologyLayersTest() { // Dependents which are not redefined are moved to other layers together with the redefined element
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column x = s.createColumn("X", t);
+        t.getData().add(2);
+        a.getData().setValue(new Range(0, 2), 1.0);
+        x.getData().setValue(new Range(0, 2), 10.0);
+
+        // Two chains of calculated columns
+        Column b = s.createColumn("B", t);
+        Column c = s.createColumn("C", t);
+        Column d = s.createColumn("D", t);
+        b.calculate(p -> (Double)p[0] + 1.0, a);
+        c.calculate(p -> (Double)p[0] + 1.0, b);
+        d.calculate(p -> (Double)p[0] + 1.0, c);
+        Column p1 = s.createColumn("P1", t);
+        Column p2 = s.createColumn("P2", t);
+        Column p3 = s.createColumn("P3", t);
+        p1.calculate(p -> (Double)p[0] * 2.0, x);
+        p2.calculate(p -> (Double)p[0] * 2.0, p1);
+        p3.calculate(p -> (Double)p[0] * 2.0, p2);
+        s.evaluate();
+        assertEquals(4.0, d.getData().getValue(1));
+        assertEquals(Arrays.asList(b, p1), s.getTopology().layers.get(1));
+
+        // The first chain is attached to the end of the second chain
+        b.calculate(p -> (Double)p[0] + 1.0, p3);
+        s.evaluate();
+        assertEquals(83.0, d.getData().getValue(1));
+        List<List<Element>> layers = s.getTopology().layers;
+        assertEquals(7, layers.size());
+        assertEquals(Arrays.asList(p1), layers.get(1));
+        assertEquals(Arrays.asList(b), layers.get(4));
+        assertEquals(Arrays.asList(c), layers.get(5));
+        assertEquals(Arrays.asList(d), layers.get(6));
+
+        // The same layers as if the graph was built anew
+        Topology full = new Topology(s);
+        full.create();
+        for(int i = 0; i < layers.size(); i++) {
+            assertEquals(new HashSet<>(full.layers.get(i)), new HashSet<>(layers.get(i)));
+        }
+
+        // Detached again so that the last layers are not used anymore
+        b.calculate(p -> (Double)p[0] + 1.0, a);
+        s.evaluate();
+        assertEquals(4.0, d.getData().getValue(1));
+        assertEquals(4, s.getTopology().layers.size());
+        assertEquals(Arrays.asList(p3, d), s.getTopology().layers.get(3));
+    }
+
+    @Test
+    public void upstreamTest() { // Evaluation of only some columns and their dependencies
+        Schema s = createConcurrentSchema();
+        Table d = s.getTable("D");
+        Table f = s.getTable("F");
+        Column fa = s.getColumn("F", "A");
+        Column dc = s.getColumn("D", "Count");
+
+        Column ds = s.createColumn("Sum", d); // Not requested
+        ds.getData().setDefaultValue(0.0);
+        ds.accumulate(s.getColumn("F", "D"), (a,p) -> (Double)a + (Double)p[0], null, fa);
+
+        long[] calls = new long[1];
+        Column fc = s.getColumn("F", "C1");
+        fc.calculate(p -> { calls[0]++; return (Double)p[0] + 1.0; }, fa);
+
+        s.evaluate(dc);
+        assertEquals(100.0, dc.getData().getValue(0));
+        assertEquals(0.0, ds.getData().getValue(1));
+        assertEquals(0, calls[0]);
+
+        // Changes which have been processed by the requested columns are processed by other columns later
+        long id = f.getData().add();
+        fa.getData().setValue(id, 1.0);
+        d.evaluateUpstream();
+        assertEquals(10L, d.getData().getLength()); // Groups are populated by the project column
+        s.evaluate(dc);
+        assertEquals(101.0, dc.getData().getValue(1));
+        assertEquals(0, calls[0]);
+
+        s.evaluate();
+        assertEquals(101.0, dc.getData().getValue(1));
+        assertEquals(101.0, ds.getData().getValue(1));
+        assertEquals(1001, calls[0]);
+        assertEquals(2.0, fc.getData().getValue(id));
+    }
+
+    @Test
+    public void subscribedTest() { // Only subscribed columns and their dependencies are evaluated
+        Schema s = new Schema("My Schema");
+        Table t = s.createTable("T");
+        Column a = s.createColumn("A", t);
+        Column b = s.createColumn("B", t);
+        Column c = s.createColumn("C", t);
+        Column d = s.createColumn("D", t);
+        t.getData().add(3);
+        a.getData().setValue(new Range(0, 3), 1.0);
+
+        long[] calls = new long[1];
+        b.calculate(p -> (Double)p[0] + 1.0, a);
+        c.calculate(p -> (Double)p[0] + 1.0, b);
+        d.calculate(p -> { calls[0]++; return (Double)p[0] * 10.0; }, b); // Exploratory column
+
+        c.setSubscribed(true);
+        assertEquals(Arrays.asList(c), s.getSubscribed());
+        s.evaluate();
+        assertEquals(3.0, c.getData().getValue(2));
+        assertEquals(0, calls[0]);
+
+        a.getData().setValue(1, 2.0);
+        s.evaluate();
+        assertEquals(4.0, c.getData().getValue(1));
+        assertEquals(0, calls[0]);
+
+        // All columns are evaluated if nothing is subscribed
+        c.setSubscribed(false);
+        s.evaluate();
+        assertEquals(30.0, d.getData().getValue(1));
+        assertEquals(3, calls[0]);
+    }
+
+    Schema createConcurrentSchema() {
+        Schema s = new Schema("My Schema");
+        Table d = s.createTable("D");
+        Column da = s.createColumn("A", d);
+        da.attribute();
+        d.product();
+
+        Table f = s.createTable("F");
+        Column fa = s.createColumn("A", f);
+        f.getData().add(1000);
+        for(long i = 0; i < 1000; i++) {
+            fa.getData().setValue(i, (double)(i % 10));
+        }
+
+        // Independent calculate columns
+        for(int c = 0; c < 8; c++) {
+            final double k = c;
+            Column fc = s.createColumn("C" + c, f);
+            fc.calculate(p -> (Double)p[0] * k, fa);
+        }
+
+        // Populate a table and accumulate into it
+        Column fd = s.createColumn("D", f, d);
+        fd.project(new Column[] {fa}, da);
+        Column dc = s.createColumn("Count", d);
+        dc.getData().setDefaultValue(0.0);
+        dc.accumulate(fd, (a,p) -> (Double)a + 1.0, null);
+
+        return s;
+    }
+
 }